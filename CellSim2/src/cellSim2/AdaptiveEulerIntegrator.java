@@ -0,0 +1,76 @@
+/**
+	 * Copyright (C) 2016 Terri Applewhite-Grosso and Nancy Griffeth
+	 * Package: cellSim2
+	 * File: TestRunner.java
+	 * Jul 14, 2016
+	 *
+	 *   Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+	 *
+	 *   The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+	 *
+	 *   THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+	 * 
+	 * 
+	 */
+
+package cellSim2;
+
+/**
+ * @author Terri Applewhite-Grosso
+ *
+ */
+public class AdaptiveEulerIntegrator implements KineticsIntegrator {
+	/**
+	 * Explicit Euler, but a segment whose receptors would turn over more than
+	 * MAX_TURNOVER of a pool in one step is advanced in equal sub-steps instead.
+	 * A segment that needs no sub-steps gets exactly the EulerIntegrator result.
+	 */
+	public static final float MAX_TURNOVER = .1f;
+	public static final int MAX_SUBSTEPS = 1000;
+	
+	public void integrate(float deltaMicroSecs, float kon, float koff, float[] concentrations, float[] uptake, ReceptorStore store, int base, int[] segments, int count){
+		float[] unbound = store.getUnbound();
+		float[] bound = store.getBound();
+		float[] secretion = store.getSecretionRates();
+		float[] unboundInt = store.getUnboundIntRates();
+		float[] boundInt = store.getBoundIntRates();
+		for (int n = 0; n < count; n++){
+			int i = segments[n];
+			int j = base + i;
+			float l = concentrations[i];
+			float qr = secretion[j];
+			float kt = unboundInt[j];
+			float ke = boundInt[j];
+			//Fastest rate at which either pool empties
+			float rate = Math.max(kon*l + kt, koff + ke);
+			int steps = 1;
+			if (deltaMicroSecs * rate > MAX_TURNOVER){
+				steps = (int)Math.min(MAX_SUBSTEPS, Math.ceil(deltaMicroSecs * rate / MAX_TURNOVER));
+			}
+			float dt = deltaMicroSecs / steps;
+			float r = unbound[j];
+			float c = bound[j];
+			for (int s = 0; s < steps; s++){
+				if (uptake != null){
+					uptake[i] += dt * ((kon*r*l) - (koff * c));
+				}
+				float deltaR = dt * ((-kon*r*l)+(koff * c)-(kt*r)+qr);
+				float deltaC = dt * ((kon*r*l) - (koff * c) - (ke * c));
+				r += deltaR;
+				c += deltaC;
+				if (r < 0){
+					r = 0;
+				}
+				if (c < 0){
+					c = 0;
+				}
+			}
+			unbound[j] = r;
+			bound[j] = c;
+		}
+	}
+	
+	public String getName(){
+		return "adaptive";
+	}
+}
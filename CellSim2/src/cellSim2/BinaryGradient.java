@@ -0,0 +1,213 @@
+/**
+	 * Copyright (C) 2016 Terri Applewhite-Grosso and Nancy Griffeth
+	 * Package: cellSim2
+	 * File: TestRunner.java
+	 * Jul 14, 2016
+	 *
+	 *   Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+	 *
+	 *   The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+	 *
+	 *   THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+	 * 
+	 * 
+	 */
+
+package cellSim2;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+
+/**
+ * @author Terri Applewhite-Grosso
+ *
+ */
+public class BinaryGradient extends FileGradient{
+	/**
+	 * A FileGradient compiled ahead of time so that it does not have to be parsed.
+	 * The concentrations are memory-mapped, so runs on the same machine share them
+	 * through the operating system's cache.
+	 * 
+	 * Layout (big-endian):
+	 * int magic, int version, int axis, int number of distances, int number of times,
+	 * float minimum concentration, float maximum concentration,
+	 * float distances[], long times[] (microseconds),
+	 * then float concentrations, one row of distances for each time
+	 */
+	public static final int MAGIC = 0x43534752; //"CSGR"
+	public static final int VERSION = 1;
+	private static final long CONVERT_HEAP_BUDGET = 64L * 1024 * 1024;
+
+	public BinaryGradient(Protein p, String filename) {
+		super(p, filename);
+		DataInputStream in = null;
+		try{
+			in = new DataInputStream(new BufferedInputStream(new FileInputStream(source)));
+			if (in.readInt() != MAGIC){
+				throw new SimException("Not a binary gradient file: " + filename);
+			}
+			int version = in.readInt();
+			if (version != VERSION){
+				throw new SimException("Binary gradient file " + filename + " has version " + version + ". Expected " + VERSION);
+			}
+			axis = in.readInt();
+			int numDistances = in.readInt();
+			numTimes = in.readInt();
+			if (numDistances < 2 || numTimes < 1){
+				throw new SimException("Binary gradient file " + filename + " needs at least two distances and one time");
+			}
+			minConcentration = in.readFloat();
+			maxConcentration = in.readFloat();
+			distances = new float[numDistances];
+			for (int i = 0; i < numDistances; i++){
+				distances[i] = in.readFloat();
+			}
+			buildDistanceIndex();
+			times = new long[numTimes];
+			for (int i = 0; i < numTimes; i++){
+				times[i] = in.readLong();
+			}
+			long offset = headerSize(numDistances, numTimes);
+			if (source.length() < offset + 4L * numDistances * numTimes){
+				throw new SimException("Binary gradient file " + filename + " is too short");
+			}
+			mapTable(source, offset);
+			gradientSuccessful = true;
+		}
+		catch (FileNotFoundException e) {
+			System.err.println("File for Gradient could not be found: " + filename);
+			System.err.println("All concentrations for protein " + pro.getName() + " set to zero");
+			maxConcentration = 0f;
+			minConcentration = 0f;
+		}
+		catch (IOException e) {
+			System.err.println("Problem reading file for gradient: " + filename);
+			e.printStackTrace();
+			System.err.println("All concentrations for protein " + pro.getName() + " set to zero");
+			maxConcentration = 0f;
+			minConcentration = 0f;
+		}
+		catch (SimException e){
+			System.err.println(e.getMessage());
+			maxConcentration = 0f;
+			minConcentration = 0f;
+		}
+		finally{
+			if (in != null){
+				try {
+					in.close();
+				} catch (IOException e) {
+					e.printStackTrace();
+				}
+			}
+		}
+	}
+	
+	private static long headerSize(int numDistances, int numTimes){
+		return 7 * 4 + 4L * numDistances + 8L * numTimes;
+	}
+	
+	public static boolean isBinary(File f){
+		//Checks whether the file starts with the binary gradient magic number
+		DataInputStream in = null;
+		try{
+			in = new DataInputStream(new FileInputStream(f));
+			return in.readInt() == MAGIC;
+		}
+		catch (IOException e){
+			return false;
+		}
+		finally{
+			if (in != null){
+				try {
+					in.close();
+				} catch (IOException e) {
+					e.printStackTrace();
+				}
+			}
+		}
+	}
+	
+	public static void compile(FileGradient g, int axis, File out) throws IOException{
+		//Writes a gradient that has already been read to the binary format
+		DataOutputStream dos = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(out), 1 << 16));
+		try{
+			int numDistances = g.distances.length;
+			dos.writeInt(MAGIC);
+			dos.writeInt(VERSION);
+			dos.writeInt(axis);
+			dos.writeInt(numDistances);
+			dos.writeInt(g.numTimes);
+			dos.writeFloat(g.getMinConcentration());
+			dos.writeFloat(g.getMaxConcentration());
+			for (int i = 0; i < numDistances; i++){
+				dos.writeFloat(g.distances[i]);
+			}
+			for (int i = 0; i < g.numTimes; i++){
+				dos.writeLong(g.times[i]);
+			}
+			for (int t = 0; t < g.numTimes; t++){
+				for (int d = 0; d < numDistances; d++){
+					dos.writeFloat(g.getValue(t, d));
+				}
+			}
+		}
+		finally{
+			dos.close();
+		}
+	}
+	
+	@Override
+	public void print(PrintStream p){
+		p.println("BinaryGradient");
+		p.println("\tProtein ID: "+ getProtein());
+		p.println("\tSource File: " + source.toString());
+	}
+	
+	public static void main(String[] args){
+		//Converts a comma-separated gradient file to the binary format
+		if (args.length < 2){
+			System.err.println("Usage: BinaryGradient <gradient.csv> <output file> [axis]");
+			System.exit(1);
+		}
+		int axis = Gradient.X_AXIS;
+		if (args.length > 2){
+			try{
+				axis = Integer.parseInt(args[2]);
+			}
+			catch(NumberFormatException e){
+				axis = -1;
+			}
+			if (axis < 0 || axis > 2){
+				System.err.println("Axis must be 0, 1 or 2");
+				System.exit(1);
+			}
+		}
+		FileGradient g = new FileGradient(null, args[0]);
+		try{
+			g.readTable(CONVERT_HEAP_BUDGET);
+			compile(g, axis, new File(args[1]));
+		}
+		catch(IOException e){
+			System.err.println("Could not convert " + args[0] + ": " + e.getMessage());
+			System.exit(1);
+		}
+		catch(NumberFormatException e){
+			System.err.println("Error reading number from file. Incorrectly formatted.");
+			System.exit(1);
+		}
+		catch(SimException e){
+			System.err.println(e.getMessage());
+			System.exit(1);
+		}
+		System.out.println("Wrote " + g.numTimes + " times and " + g.distances.length + " distances to " + args[1]);
+	}
+}
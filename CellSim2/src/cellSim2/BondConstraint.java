@@ -6,6 +6,7 @@ import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.util.Arrays;
 
 import javax.vecmath.Vector3f;
 
@@ -17,12 +18,21 @@ import com.bulletphysics.dynamics.constraintsolver.RotationalLimitMotor;
 public class BondConstraint extends Generic6DofConstraint{
 	//public static BufferedWriter validatingData;
 	private static long id=0;
-	private String startTime;
+	private static final float BASE_LIMIT_FORCE = 300f; //RotationalLimitMotor's default
 	private Vector3f startAPos, startBPos;
 	private float initialLength;
 	private long myId;
 	private Simulation sim;
-	private long creationTime;
+	private SimRandom random;
+	private long breakTime; //earliest time a member ruptures unless stretching breaks it first
+	//Every bond-equivalent held by this joint. Unless bonds are aggregated there is only ever one
+	private int count;
+	private long[] memberIds;
+	private long[] memberCreated;
+	private long[] memberBreaks;
+	int heapIndex = -1; //position in the simulation's BondHeap
+	int storeIndex = -1; //position in the simulation's constraint list
+	int worldIndex = -1; //position in the SimDynamicsWorld's constraint list
 	float timeToStable, bondLength, aValue, cValue;
 	float lastStretch;
 	float adjustment;
@@ -37,9 +47,64 @@ public class BondConstraint extends Generic6DofConstraint{
 
 	public BondConstraint(Simulation s, float stab, float length, SurfaceSegment ssa, SurfaceSegment ssb, int proa, int prob, RigidBody rbA, RigidBody rbB, Transform frameInA, Transform frameInB, boolean useLinearReferenceFrameA) {
 		super(rbA, rbB, frameInA, frameInB, true);
-		this.setLinearLowerLimit(new Vector3f(-length, -length, -length));
-		//this.setLinearLowerLimit(new Vector3f(-length, -length, -length));
-		this.setLinearUpperLimit(new Vector3f(length, length, length));
+		//Get world transform for object a and use to convert both positions to get initial points
+		ta = new Transform();
+		tb = new Transform();
+		/*
+		tlm = this.getTranslationalLimitMotor();
+		//tlm.damping = .5f;
+		rlm = new RotationalLimitMotor[3];
+		for (int i = 0; i < 3; i++){
+			rlm[i] = this.getRotationalLimitMotor(i);
+		}*/
+		startAPos = new Vector3f();
+		startBPos = new Vector3f();
+		memberIds = new long[1];
+		memberCreated = new long[1];
+		memberBreaks = new long[1];
+		setUp(s, stab, length, ssa, ssb, proa, prob);
+	}
+	
+	public static BondConstraint makeBond(Simulation s, float stab, float length, SurfaceSegment ssa, SurfaceSegment ssb, int proa, int prob, RigidBody rbA, RigidBody rbB, Transform frameInA, Transform frameInB){
+		//Reuses a broken bond from the simulation's pool if there is one
+		BondConstraint bc = s.takePooledBond();
+		if (bc == null){
+			return new BondConstraint(s, stab, length, ssa, ssb, proa, prob, rbA, rbB, frameInA, frameInB, true);
+		}
+		bc.reattach(rbA, rbB, frameInA, frameInB);
+		bc.setUp(s, stab, length, ssa, ssb, proa, prob);
+		return bc;
+	}
+	
+	private void reattach(RigidBody a, RigidBody b, Transform fa, Transform fb){
+		//Puts back the state that the Generic6DofConstraint constructor sets and the solver changes
+		rbA = a;
+		rbB = b;
+		frameInA.set(fa);
+		frameInB.set(fb);
+		useLinearReferenceFrameA = true;
+		appliedImpulse = 0;
+		linearLimits.accumulatedImpulse.set(0, 0, 0);
+		for (int i = 0; i < 3; i++){
+			RotationalLimitMotor rot = angularLimits[i];
+			rot.accumulatedImpulse = 0;
+			rot.currentLimit = 0;
+			rot.currentLimitError = 0;
+		}
+	}
+	
+	void release(){
+		//The bond is going back to the pool. Don't hold on to the cells
+		surfA.removeJoint(this);
+		rbA = null;
+		rbB = null;
+		surfA = null;
+		surfB = null;
+	}
+	
+	private void setUp(Simulation s, float stab, float length, SurfaceSegment ssa, SurfaceSegment ssb, int proa, int prob){
+		linearLimits.lowerLimit.set(-length, -length, -length);
+		linearLimits.upperLimit.set(length, length, length);
 		//this.setAngularLowerLimit(angularLower);
 		RotationalLimitMotor rot = this.getRotationalLimitMotor(1);
 		rot.loLimit = (float)((-Math.PI*.9/2));
@@ -51,28 +116,17 @@ public class BondConstraint extends Generic6DofConstraint{
 		rot.loLimit = (float)(-Math.PI);
 		rot.hiLimit = (float)(Math.PI);
 		myId = id;
-		id++;
-		id = id % Long.MAX_VALUE;
 		sim = s;
-		creationTime = sim.getCurrentTimeMicroseconds();
-		startTime = sim.getFormattedTime();
+		//A pooled bond keeps its generator and reseeds it
+		random = sim.getRandomStream(SimRandom.BOND_STREAM, myId, random);
 		timeToStable = stab;
 		bondLength = length;
 		lastStretch = 0;
 		adjustment = 1;
 		
 		//System.out.println("Time to stable: " + timeToStable);
-		cValue = .05f;
-		if (cValue * timeToStable >= 7){
-			cValue = 6.9f /timeToStable;
-		}
-		if (timeToStable > 10){
-			aValue = (float)(.7 - timeToStable*cValue);
-		}
-		else{
-			double eS = Math.exp(timeToStable);
-			aValue = (float)((.7 - timeToStable*cValue)*eS/(eS-1));
-		}
+		cValue = getCValue(timeToStable);
+		aValue = getAValue(timeToStable, cValue);
 		//System.out.println("Time to stable: " + timeToStable + " aValue: " + aValue + " cValue: "+cValue);
 		surfA = ssa;
 		surfB = ssb;
@@ -80,37 +134,82 @@ public class BondConstraint extends Generic6DofConstraint{
 		proteinB = prob;
 		active = true;
 		positionSet = false;
+		startAPos.set(0, 0, 0);
+		startBPos.set(0, 0, 0);
+		initialLength = 0;
 		numMolecules = Math.max(ssa.getMoleculesPerBond(proa), ssb.getMoleculesPerBond(prob));
-		ssa.makeBond(proa, numMolecules);
-		ssb.makeBond(prob, numMolecules);
+		count = 0;
+		breakTime = Long.MAX_VALUE;
+		addMember();
 		s.addConstraint(this);
-		//Get world transform for object a and use to convert both positions to get initial points
-		ta = new Transform();
-		tb = new Transform();
-		/*
-		tlm = this.getTranslationalLimitMotor();
-		//tlm.damping = .5f;
-		rlm = new RotationalLimitMotor[3];
+	}
+	
+	public void addMember(){
+		//One more bond-equivalent between the same two segments and proteins
+		if (count == memberIds.length){
+			memberIds = Arrays.copyOf(memberIds, count * 2);
+			memberCreated = Arrays.copyOf(memberCreated, count * 2);
+			memberBreaks = Arrays.copyOf(memberBreaks, count * 2);
+		}
+		long now = sim.getCurrentTimeMicroseconds();
+		memberIds[count] = id;
+		id++;
+		id = id % Long.MAX_VALUE;
+		memberCreated[count] = now;
+		//Sample the rupture time once from the unstretched hazard
+		double life = sampleLifetime(aValue, cValue, random.nextFloat());
+		double lifeMicros = life * 60 * 1000000;
+		if (lifeMicros >= Long.MAX_VALUE - now){
+			memberBreaks[count] = Long.MAX_VALUE;
+		}
+		else{
+			memberBreaks[count] = now + (long)lifeMicros;
+		}
+		surfA.makeBond(proteinA, numMolecules);
+		surfB.makeBond(proteinB, numMolecules);
+		count++;
+		setStrength();
+		if (memberBreaks[count-1] < breakTime){
+			breakTime = memberBreaks[count-1];
+			if (heapIndex >= 0){
+				sim.rescheduleBond(this);
+			}
+		}
+	}
+	
+	public int getCount(){
+		return count;
+	}
+	
+	private void setStrength(){
+		//Each bond-equivalent adds the same resistance to twisting
+		//The linear limits are hard limits, so they are the same for any number of bonds
 		for (int i = 0; i < 3; i++){
-			rlm[i] = this.getRotationalLimitMotor(i);
-		}*/
-		startAPos = new Vector3f();
-		startBPos = new Vector3f();
-		initialLength = 0;
+			angularLimits[i].maxLimitForce = BASE_LIMIT_FORCE * Math.max(count, 1);
+		}
 	}
 	
-	public void update(){
-		long currentTime = sim.getCurrentTimeMicroseconds();
-		float deltaMins = sim.getDeltaTimeMicroseconds()/1000000f/60;
-		float lifetime = (float)(currentTime - creationTime);
-		float t = lifetime/1000000f/ 60; //convert microsecs to minutes
-		float probToBreak = cValue;
-		if (t < (timeToStable*3/4) || t < 80){
-			probToBreak = (float)(aValue / Math.exp(t) + cValue);
+	private void breakMember(int i){
+		//Writes the member's final output, returns its molecules and drops it
+		sim.writeBondOutput(getOutput(i, false));
+		returnMolecules(memberCreated[i]);
+		count--;
+		memberIds[i] = memberIds[count];
+		memberCreated[i] = memberCreated[count];
+		memberBreaks[i] = memberBreaks[count];
+		setStrength();
+	}
+	
+	private void findBreakTime(){
+		breakTime = Long.MAX_VALUE;
+		for (int i = 0; i < count; i++){
+			breakTime = Math.min(breakTime, memberBreaks[i]);
 		}
-		
-		
-		probToBreak = probToBreak * deltaMins;//WHY?
+	}
+	
+	public void update(){
+		//The unstretched chance of breaking is already in breakTime - the simulation breaks the bond when it is due
+		//This only checks the stretch, and draws the extra chance of breaking for a stretched bond
 		getCalculatedTransformA(ta);
 		getCalculatedTransformB(tb);
 		ta.origin.sub(tb.origin);
@@ -127,27 +226,41 @@ public class BondConstraint extends Generic6DofConstraint{
 		if (bondStretch > 1){
 			adjustment *= 1.001f;
 			//System.err.println("Bond Stretch = " + bondStretch);
+			//If bond is very long, increase the chance of breaking!
+			//TODO Add a parameter that either increases or decreases. Maybe with a time constraint
+			//The hazard was scaled by adjustment. The unscaled part is in breakTime, so only the extra is drawn here
+			float deltaMins = sim.getDeltaTimeMicroseconds()/1000000f/60;
+			long now = sim.getCurrentTimeMicroseconds();
+			int oldCount = count;
+			for (int i = count - 1; i >= 0; i--){
+				float t = (now - memberCreated[i])/1000000f/60; //convert microsecs to minutes
+				float probToBreak = getHazard(t) * deltaMins;
+				float rand = random.nextFloat();
+				//System.out.println("Bond " + myId + ": deltaMins: " + deltaMins + " Prob to break: " + probToBreak + " rand: " + rand);
+				if (rand <= probToBreak * (adjustment - 1)){
+					breakMember(i);
+				}
+			}
+			if (count == 0){
+				active = false;
+			}
+			else if (count < oldCount){
+				findBreakTime();
+				sim.rescheduleBond(this);
+			}
 		}
 		else{
 			adjustment = 1f;
 		}
 		
-		//If bond is very long, increase the chance of breaking!
-		//TODO Add a parameter that either increases or decreases. Maybe with a time constraint
-		
-		float rand = sim.getNextRandomF();
-		//System.out.println("Bond " + myId + ": deltaMins: " + deltaMins + " Prob to break: " + probToBreak + " rand: " + rand);
-		if (rand <= probToBreak * adjustment){
-			active = false;
-		}
-		getCalculatedTransformA(ta);
-		getCalculatedTransformB(tb);
 		if (bondStretch > 200){
 			//sim.writeToLog("Bond " + myId + " may be unstable!\t" + bondStretch + "\t" + stretchRatio);
 			//sim.startInvestigating();
 		}
 		
 		if (sim.isInvestigating()){
+			getCalculatedTransformA(ta);
+			getCalculatedTransformB(tb);
 			String s = sim.getFormattedTime() + "\tBond\t" + myId + "\t" + bondStretch + "\t";
 			s+= ta.origin + "\t" + tb.origin;
 			for (int i = 0; i < 3; i++){
@@ -162,8 +275,92 @@ public class BondConstraint extends Generic6DofConstraint{
 		return active;
 	}
 	
+	public long getBreakTime(){
+		return breakTime;
+	}
+	
+	public void rupture(long now){
+		//Breaks every member whose sampled lifetime is over
+		for (int i = count - 1; i >= 0; i--){
+			if (memberBreaks[i] <= now){
+				breakMember(i);
+			}
+		}
+		if (count == 0){
+			active = false;
+		}
+		findBreakTime();
+	}
+	
+	private float getHazard(float t){
+		//Chance of breaking per minute for an unstretched bond t minutes old
+		float probToBreak = cValue;
+		if (t < (timeToStable*3/4) || t < 80){
+			probToBreak = (float)(aValue / Math.exp(t) + cValue);
+		}
+		return probToBreak;
+	}
+	
+	static float getCValue(float stab){
+		float c = .05f;
+		if (c * stab >= 7){
+			c = 6.9f /stab;
+		}
+		return c;
+	}
+	
+	static float getAValue(float stab, float c){
+		if (stab > 10){
+			return (float)(.7 - stab*c);
+		}
+		double eS = Math.exp(stab);
+		return (float)((.7 - stab*c)*eS/(eS-1));
+	}
+	
+	static double cumulativeHazard(double a, double c, double t){
+		//Integral of the hazard max(a*exp(-s) + c, 0) from 0 to t minutes
+		//getHazard drops the exponential once the bond is at least 80 minutes old, when it is negligible
+		double start = 0;
+		if (a < 0){
+			//The hazard is negative - no chance of breaking - until a*exp(-s) + c reaches 0
+			start = Math.max(0, Math.log(-a/c));
+		}
+		if (t <= start){
+			return 0;
+		}
+		return a * (Math.exp(-start) - Math.exp(-t)) + c * (t - start);
+	}
+	
+	static double sampleLifetime(double a, double c, double u){
+		//Inverse CDF: the survival function is exp(-H(t)), so solve H(t) = -ln(1-u) for a uniform u in [0, 1)
+		//H is increasing, so bisection is safe. This is only done once per bond
+		double target = -Math.log(1 - u);
+		double lo = 0, hi = 1;
+		while (cumulativeHazard(a, c, hi) < target){
+			lo = hi;
+			hi *= 2;
+		}
+		for (int i = 0; i < 60; i++){
+			double mid = (lo + hi)/2;
+			if (cumulativeHazard(a, c, mid) < target){
+				lo = mid;
+			}
+			else{
+				hi = mid;
+			}
+		}
+		return hi;
+	}
+	
 	public void destroy(){
-		//Return proteins to the surfaces
+		//Return proteins to the surfaces for any members that are left
+		for (int i = 0; i < count; i++){
+			returnMolecules(memberCreated[i]);
+		}
+		count = 0;
+	}
+	
+	private void returnMolecules(long creationTime){
 		long currentTime = sim.getCurrentTimeMicroseconds();
 		float lifetime = (currentTime - creationTime)/1000000/60;
 		
@@ -181,13 +378,22 @@ public class BondConstraint extends Generic6DofConstraint{
 	}
 	
 	public String getOutput(){
-		float life = (float)(sim.getCurrentTimeMicroseconds() - creationTime)/(1000000*60);
-		String s = myId + "\t" + startTime + "\t" + startAPos + "\t" + startBPos + "\t" + initialLength + "\t";
+		//One line for each bond-equivalent still held
+		String s = "";
+		for (int i = 0; i < count; i++){
+			s += getOutput(i, isActive());
+		}
+		return s;
+	}
+	
+	private String getOutput(int member, boolean memberActive){
+		float life = (float)(sim.getCurrentTimeMicroseconds() - memberCreated[member])/(1000000*60);
+		String s = memberIds[member] + "\t" + sim.getFormattedTime(memberCreated[member]) + "\t" + startAPos + "\t" + startBPos + "\t" + initialLength + "\t";
 		s += surfA.getParent().getType() +"-"+surfA.getParent().getID()+ "\t" + surfA.getID() + "\t";
 		s += sim.getProteinName(proteinA) + "\t" + surfB.getParent().getType() +"-"+surfB.getParent().getID() + "\t";
 		s += surfB.getID() + "\t";
-		s += sim.getProteinName(proteinB) + "\t" + life + "\t" + isActive();
-		if (isActive()){
+		s += sim.getProteinName(proteinB) + "\t" + life + "\t" + memberActive;
+		if (memberActive){
 			getCalculatedTransformA(ta);
 			getCalculatedTransformB(tb);
 			s += ("\t" + ta.origin + "\t" + tb.origin);
@@ -201,5 +407,64 @@ public class BondConstraint extends Generic6DofConstraint{
 	
 	public static void closeWriter(){
 	}
+	
+	public static void main(String args[]){
+		//Checks that the sampled lifetimes have the same distribution as breaking the bond
+		//with a random draw every frame. Compares the two with a Kolmogorov-Smirnov test
+		//usage: BondConstraint [samples] [seconds per frame]
+		int n = 5000;
+		float frameSecs = 1f;
+		if (args.length > 0){
+			n = Integer.parseInt(args[0]);
+		}
+		if (args.length > 1){
+			frameSecs = Float.parseFloat(args[1]);
+		}
+		float deltaMins = frameSecs/60;
+		float[] stabs = {.5f, 2f, 10f, 30f, 200f};
+		SimRandom sr = new SimRandom(12345L);
+		double critical = 1.36 * Math.sqrt(2.0/n); //5% level for two samples of size n
+		for (int k = 0; k < stabs.length; k++){
+			float stab = stabs[k];
+			float c = getCValue(stab);
+			float a = getAValue(stab, c);
+			double[] sampled = new double[n];
+			double[] stepped = new double[n];
+			for (int i = 0; i < n; i++){
+				//The simulation removes a bond at the first frame after its break time
+				double life = sampleLifetime(a, c, sr.nextFloat());
+				sampled[i] = Math.max(1, Math.ceil(life/deltaMins)) * (double)deltaMins;
+				//The old per frame trial
+				long frames = 0;
+				while (true){
+					float t = frames * deltaMins;
+					float p = c;
+					if (t < (stab*3/4) || t < 80){
+						p = (float)(a / Math.exp(t) + c);
+					}
+					if (sr.nextFloat() <= p * deltaMins){
+						break;
+					}
+					frames++;
+				}
+				stepped[i] = (frames + 1) * (double)deltaMins;
+			}
+			Arrays.sort(sampled);
+			Arrays.sort(stepped);
+			double d = 0;
+			int i = 0, j = 0;
+			while (i < n && j < n){
+				double x = Math.min(sampled[i], stepped[j]);
+				while (i < n && sampled[i] <= x){
+					i++;
+				}
+				while (j < n && stepped[j] <= x){
+					j++;
+				}
+				d = Math.max(d, Math.abs((double)i/n - (double)j/n));
+			}
+			System.out.println("Time to stable " + stab + "\tKS distance " + String.format("%.4f", d) + "\tcritical " + String.format("%.4f", critical) + "\t" + (d < critical ? "same" : "DIFFERENT"));
+		}
+	}
 
 }
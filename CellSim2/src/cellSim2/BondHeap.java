@@ -0,0 +1,126 @@
+/**
+	 * Copyright (C) 2016 Terri Applewhite-Grosso and Nancy Griffeth
+	 * Package: cellSim2
+	 * File: TestRunner.java
+	 * Jul 14, 2016
+	 *
+	 *   Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+	 *
+	 *   The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+	 *
+	 *   THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+	 * 
+	 * 
+	 */
+
+
+package cellSim2;
+
+/**
+ * @author Terri Applewhite-Grosso
+ *
+ */
+public class BondHeap {
+	/**
+	 * Min-heap of bonds ordered by the time they are due to break.
+	 * Each bond remembers its place in the heap so that a bond broken
+	 * some other way can be taken out without a search.
+	 */
+	private BondConstraint[] heap;
+	private int size;
+	
+	public BondHeap(){
+		heap = new BondConstraint[64];
+		size = 0;
+	}
+	
+	public int size(){
+		return size;
+	}
+	
+	public BondConstraint peek(){
+		if (size == 0){
+			return null;
+		}
+		return heap[0];
+	}
+	
+	public void add(BondConstraint b){
+		if (size == heap.length){
+			BondConstraint[] newHeap = new BondConstraint[heap.length * 2];
+			System.arraycopy(heap, 0, newHeap, 0, size);
+			heap = newHeap;
+		}
+		heap[size] = b;
+		b.heapIndex = size;
+		size++;
+		siftUp(size - 1);
+	}
+	
+	public BondConstraint poll(){
+		if (size == 0){
+			return null;
+		}
+		BondConstraint b = heap[0];
+		removeAt(0);
+		return b;
+	}
+	
+	public void remove(BondConstraint b){
+		int i = b.heapIndex;
+		if (i < 0 || i >= size || heap[i] != b){
+			return;
+		}
+		removeAt(i);
+	}
+	
+	private void removeAt(int i){
+		heap[i].heapIndex = -1;
+		size--;
+		BondConstraint last = heap[size];
+		heap[size] = null;
+		if (i < size){
+			heap[i] = last;
+			last.heapIndex = i;
+			siftDown(i);
+			siftUp(last.heapIndex);
+		}
+	}
+	
+	private void siftUp(int i){
+		BondConstraint b = heap[i];
+		long time = b.getBreakTime();
+		while (i > 0){
+			int parent = (i - 1) / 2;
+			if (heap[parent].getBreakTime() <= time){
+				break;
+			}
+			heap[i] = heap[parent];
+			heap[i].heapIndex = i;
+			i = parent;
+		}
+		heap[i] = b;
+		b.heapIndex = i;
+	}
+	
+	private void siftDown(int i){
+		BondConstraint b = heap[i];
+		long time = b.getBreakTime();
+		int half = size / 2;
+		while (i < half){
+			int child = 2 * i + 1;
+			int right = child + 1;
+			if (right < size && heap[right].getBreakTime() < heap[child].getBreakTime()){
+				child = right;
+			}
+			if (time <= heap[child].getBreakTime()){
+				break;
+			}
+			heap[i] = heap[child];
+			heap[i].heapIndex = i;
+			i = child;
+		}
+		heap[i] = b;
+		b.heapIndex = i;
+	}
+}
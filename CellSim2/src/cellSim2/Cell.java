@@ -23,6 +23,7 @@ package cellSim2;
 
 import java.io.BufferedWriter;
 import java.io.IOException;
+import java.util.BitSet;
 import java.util.HashMap;
 import java.util.HashSet;
 
@@ -62,11 +63,13 @@ public class Cell implements SimObject{
 	protected boolean boundProtein = false;
 	protected boolean toRemove = false;
 	protected Simulation sim;
+	protected SimRandom random;
 	protected String objectType = "Cell";
 	protected boolean bound = false;
 	protected HashMap<Integer, TraffickingInfo> traffickRates;
 	protected HashSet<Integer> surfaceProteins;
 	protected HashSet<Integer> receptorsBindTo;
+	protected BitSet surfaceProteinBits, receptorsBindToBits;
 	
 	protected int baseProb = 40; //% probability that molecule will bind
 	//protected int currentProb = baseProb; //For Uniform response, the probability that molecule will bind to the whole cell
@@ -100,6 +103,7 @@ public class Cell implements SimObject{
 		
 		this.id = cell_ids;
 		cell_ids++;
+		random = sim.getRandomStream(SimRandom.CELL_STREAM, id);
 		
 		cellColor = new float[3];
 		for (int i = 0; i < 3; i++){
@@ -109,6 +113,8 @@ public class Cell implements SimObject{
 		traffickRates = new HashMap<Integer, TraffickingInfo>();
 		surfaceProteins = new HashSet<Integer>();
 		receptorsBindTo = new HashSet<Integer>();
+		surfaceProteinBits = new BitSet();
+		receptorsBindToBits = new BitSet();
 	}
 	
 	public void updateObject(){
@@ -130,6 +136,14 @@ public class Cell implements SimObject{
 		//System.out.println("   and cell color is " + getColor3Vector());
 	}
 	
+	public void updateMotion(){
+		updateObject();
+	}
+	
+	public void updateSurface(){
+		//No surface segments
+	}
+	
 	public Vector3f getOrigin(){
 		return this.origin;
 	}
@@ -141,14 +155,14 @@ public class Cell implements SimObject{
 	protected Vector3f getRandomVector(float mag){
 		//System.out.println("Getting Random Delta Velocity");
 		Vector3f deltaVel = new Vector3f(0f, 0f, 0f);
-		float magnitude  = sim.getNextRandomF() * mag;
+		float magnitude  = random.nextFloat() * mag;
 		float horAngle, verAngle, yMag, xMag, zMag;
 		double h;
 		//Simply get a random velocity vector
 		//Get random horizontal angle between 0 and 2 * PI
-		horAngle = (float)(sim.getNextRandomF() * 2 * Math.PI);
+		horAngle = (float)(random.nextFloat() * 2 * Math.PI);
 		//Get random vertical angle between -PI/2 to +PI/2
-		verAngle = (float)(sim.getNextRandomF() * Math.PI - (Math.PI/2));
+		verAngle = (float)(random.nextFloat() * Math.PI - (Math.PI/2));
 				
 		yMag = (float)(magnitude * Math.sin(verAngle));
 		h = magnitude * Math.cos(verAngle);
@@ -170,9 +184,9 @@ public class Cell implements SimObject{
 	}
 	
 	private void setInitialVel(){
-		float magnitude = sim.getNextRandomF() * maxVelChange;
-		float hor_angle = (float)(sim.getNextRandomF() * 2 * Math.PI);
-		float ver_angle = (float)((sim.getNextRandomF() * Math.PI) - Math.PI/2.0);
+		float magnitude = random.nextFloat() * maxVelChange;
+		float hor_angle = (float)(random.nextFloat() * 2 * Math.PI);
+		float ver_angle = (float)((random.nextFloat() * Math.PI) - Math.PI/2.0);
 		float y_mag = (float)(magnitude * Math.sin(ver_angle));
 		double h = magnitude * Math.cos(ver_angle);
 		float x_mag = (float)(Math.cos(hor_angle)* h);
@@ -255,6 +269,10 @@ public class Cell implements SimObject{
 		return this.id;
 	}
 	
+	public SimRandom getRandom(){
+		return random;
+	}
+	
 	public void setType(String s){
 		objectType = s;
 	}
@@ -263,6 +281,11 @@ public class Cell implements SimObject{
 		return objectType;
 	}
 	
+	public int getKind(){
+		//The old cells never bind
+		return MOBILE;
+	}
+	
 	public float getMass(){
 		return mass;
 	}
@@ -309,6 +332,14 @@ public class Cell implements SimObject{
 		return receptorsBindTo;
 	}
 	
+	public BitSet getSurfaceProteinBits(){
+		return surfaceProteinBits;
+	}
+	
+	public BitSet getReceptorsBindToBits(){
+		return receptorsBindToBits;
+	}
+	
 	public void setOutputFile(BufferedWriter bw){
 		outputFile = bw;
 	}
@@ -333,14 +364,6 @@ public class Cell implements SimObject{
 		return sim.getProtein(id);
 	}
 	
-	public boolean collidedWith(SimObject o){
-		return false;
-	}
-	
-	public void clearCollisions(){
-		
-	}
-	
 	public boolean isMobile(){
 		return true;
 	}
@@ -360,5 +383,13 @@ public class Cell implements SimObject{
 	public Vector3f[] getWorldCoordinates(int surface){
 		return null;
 	}
+	
+	public void getSegmentWorldNormal(int index, Transform trans, Vector3f normal){
+		normal.set(0, 0, 0);
+	}
+	
+	public int getWorldCoordinates(int surface, Transform trans, Vector3f[] vertices){
+		return 0;
+	}
 
 }
@@ -0,0 +1,111 @@
+/**
+	 * Copyright (C) 2016 Terri Applewhite-Grosso and Nancy Griffeth
+	 * Package: cellSim2
+	 * File: TestRunner.java
+	 * Jul 14, 2016
+	 *
+	 *   Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+	 *
+	 *   The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+	 *
+	 *   THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+	 * 
+	 * 
+	 */
+
+
+package cellSim2;
+
+import java.util.Arrays;
+
+/**
+ * @author Terri Applewhite-Grosso
+ *
+ */
+public class CollisionRegistry {
+	/**
+	 * Remembers which pairs of bodies have already been handled in this time step.
+	 * A pair is packed into a long (smaller body id in the high half) and kept in an
+	 * open addressed table. Each slot carries the epoch it was written in, so
+	 * clearing the table is just moving to the next epoch.
+	 */
+	private static final int INITIAL_CAPACITY = 256;
+	
+	private long[] keys;
+	private int[] epochs;
+	private int epoch;
+	private int size;
+	private int mask;
+	
+	public CollisionRegistry(){
+		keys = new long[INITIAL_CAPACITY];
+		epochs = new int[INITIAL_CAPACITY];
+		mask = INITIAL_CAPACITY - 1;
+		epoch = 1;
+		size = 0;
+	}
+	
+	public boolean addPair(SimRigidBody a, SimRigidBody b){
+		//Returns true if the pair was already registered in this time step
+		int idA = a.getBodyId(), idB = b.getBodyId();
+		long key;
+		if (idA < idB){
+			key = ((long)idA << 32) | (idB & 0xFFFFFFFFL);
+		}
+		else{
+			key = ((long)idB << 32) | (idA & 0xFFFFFFFFL);
+		}
+		int slot = hash(key) & mask;
+		while (epochs[slot] == epoch){
+			if (keys[slot] == key){
+				return true;
+			}
+			slot = (slot + 1) & mask;
+		}
+		keys[slot] = key;
+		epochs[slot] = epoch;
+		size++;
+		if (size * 2 > keys.length){
+			grow();
+		}
+		return false;
+	}
+	
+	public void clear(){
+		epoch++;
+		if (epoch == Integer.MAX_VALUE){
+			//Start over rather than wrap back onto old stamps
+			Arrays.fill(epochs, 0);
+			epoch = 1;
+		}
+		size = 0;
+	}
+	
+	public int size(){
+		return size;
+	}
+	
+	private void grow(){
+		long[] oldKeys = keys;
+		int[] oldEpochs = epochs;
+		keys = new long[oldKeys.length * 2];
+		epochs = new int[oldKeys.length * 2];
+		mask = keys.length - 1;
+		for (int i = 0; i < oldKeys.length; i++){
+			if (oldEpochs[i] != epoch){
+				continue;
+			}
+			int slot = hash(oldKeys[i]) & mask;
+			while (epochs[slot] == epoch){
+				slot = (slot + 1) & mask;
+			}
+			keys[slot] = oldKeys[i];
+			epochs[slot] = epoch;
+		}
+	}
+	
+	private static int hash(long key){
+		key *= 0x9E3779B97F4A7C15L;
+		return (int)(key ^ (key >>> 32));
+	}
+}
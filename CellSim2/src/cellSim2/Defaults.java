@@ -50,6 +50,16 @@ public class Defaults {
 		defaults.put("secBetweenImages", new String[]{"1"});
 		defaults.put("speedUp", new String[]{"1"});
 		defaults.put("startX", new String[]{"0"});
+		defaults.put("parallelUpdate", new String[]{"false"});
+		defaults.put("updateThreads", new String[]{"0"});
+		defaults.put("aggregateBonds", new String[]{"false"});
+		defaults.put("gradientHeapBudget", new String[]{"64"});
+		defaults.put("ligandDepletion", new String[]{"false"});
+		defaults.put("kineticsIntegrator", new String[]{"euler"});
+		defaults.put("kineticsInterval", new String[]{"0"});
+		defaults.put("stochasticBinding", new String[]{"false"});
+		defaults.put("segmentSleepTolerance", new String[]{"0"});
+		defaults.put("segmentMaxSleep", new String[]{"1"});
 		//defaults.put("molsPerBond", new String[]{"100"});
 	}
 	
@@ -68,6 +78,16 @@ public class Defaults {
 		defaultTitles.put("secBetweenImages", "Seconds Between Image Output");
 		defaultTitles.put("speedUp", "Acceleration Value");
 		defaultTitles.put("startX", "startX - What is this?");
+		defaultTitles.put("parallelUpdate", "Update Cell Surfaces in Parallel (True/False)");
+		defaultTitles.put("updateThreads", "Threads for Parallel Update (0 = all processors)");
+		defaultTitles.put("aggregateBonds", "Combine Bonds Between the Same Segments (True/False)");
+		defaultTitles.put("gradientHeapBudget", "Largest Gradient File Table Kept in Memory (MB)");
+		defaultTitles.put("ligandDepletion", "Cells Take Up Ligand From Diffusion Gradients (True/False)");
+		defaultTitles.put("kineticsIntegrator", "Receptor Kinetics Integrator (euler/adaptive/exact)");
+		defaultTitles.put("kineticsInterval", "Seconds Between Receptor Kinetics Updates (0 = every frame)");
+		defaultTitles.put("stochasticBinding", "Sample the Number of New Bonds (True/False)");
+		defaultTitles.put("segmentSleepTolerance", "Relative Receptor Change Below Which Segments Sleep (0 = never)");
+		defaultTitles.put("segmentMaxSleep", "Longest Segment Sleep (seconds)");
 		//defaultTitles.put("molsPerBond", "Molecules Per Bond");
 		defaultTitles.put("Name", "Name or Type");
 		defaultTitles.put("numCells", "Number of Cells");
@@ -0,0 +1,475 @@
+/**
+	 * Copyright (C) 2016 Terri Applewhite-Grosso and Nancy Griffeth
+	 * Package: cellSim2
+	 * File: TestRunner.java
+	 * Jul 14, 2016
+	 *
+	 *   Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+	 *
+	 *   The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+	 *
+	 *   THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+	 * 
+	 * 
+	 */
+
+package cellSim2;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import javax.vecmath.Vector3f;
+
+/**
+ * @author Terri Applewhite-Grosso
+ *
+ */
+public class DiffusionGradient implements Gradient{
+	/**
+	 * Solves diffusion with first order decay on a grid over the vessel as the simulation runs.
+	 * The source holds its concentration on the vessel face at the start of the gradient's axis.
+	 * The other faces are walls, so nothing flows through them.
+	 * Each step is implicit in one direction at a time (locally one-dimensional splitting),
+	 * so every grid line is a tridiagonal system solved with the Thomas algorithm.
+	 * The lines in a direction are independent and are split across the thread pool.
+	 */
+	private static final float MAX_STEP = 1f; //seconds. Longer gaps are split into steps this long
+	private static final int MIN_LINES = 64; //fewest grid lines solved in one task
+	private static final float MOLECULES_TO_NM = 1.66112975f; //molecules per cubic micron to nM, as in Utilities.makeBonds
+	
+	protected Protein pro;
+	protected int axis;
+	protected float sourceConcentration;
+	protected float initialConcentration;
+	private float diffusion; //square microns per second
+	private float decay; //per second
+	private Vector3f vessel;
+	private float sourceOffset; //distance from source minus the x position in the simulation
+	private float gridSize;
+	private BufferedWriter outputFile;
+	
+	private int[] cells; //number of grid cells along each axis
+	private float[] spacing;
+	private float[] conc; //concentration at cell x, y, z is conc[(z * cells[1] + y) * cells[0] + x]
+	private long solvedTime;
+	private LineSolveTask[] lineTasks; //by direction. Made with the grid and reused every step
+	private float stepSize; //seconds in the step the line tasks are solving
+	//Ligand taken up by cells since the last step. Each depositing object owns a sink,
+	//so deposits need no locking. They are applied in owner order so runs are repeatable
+	private ArrayList<Sink> sinks;
+	private boolean sinksSorted;
+	private double depleted; //total molecules taken up
+	private double overdrawn; //molecules bound beyond what the grid cell held. These were never in the medium
+	
+	public static class Sink{
+		private int owner;
+		private int[] cells;
+		private float[] molecules;
+		private int count;
+		
+		private Sink(int o){
+			owner = o;
+			cells = new int[16];
+			molecules = new float[16];
+			count = 0;
+		}
+		
+		private void add(int cell, float m){
+			if (count == cells.length){
+				cells = Arrays.copyOf(cells, count * 2);
+				molecules = Arrays.copyOf(molecules, count * 2);
+			}
+			cells[count] = cell;
+			molecules[count] = m;
+			count++;
+		}
+	}
+	
+	public DiffusionGradient(Protein p, float d, Vector3f v, float offset) {
+		pro = p;
+		axis = X_AXIS;
+		diffusion = d;
+		vessel = new Vector3f(v);
+		sourceOffset = offset;
+		sourceConcentration = 0f;
+		initialConcentration = 0f;
+		gridSize = 5f;
+		outputFile = null;
+		//Protein's decay rate is the mean lifetime in minutes
+		float lifetime = pro.getDecayRate() * 60;
+		decay = lifetime > 0 ? 1 / lifetime : 0;
+		conc = null;
+		solvedTime = 0L;
+		sinks = new ArrayList<Sink>();
+		sinksSorted = true;
+		depleted = 0;
+		overdrawn = 0;
+	}
+	
+	public synchronized Sink makeSink(int owner){
+		//owner must be unique to the depositing object
+		Sink s = new Sink(owner);
+		sinks.add(s);
+		sinksSorted = false;
+		return s;
+	}
+	
+	public void deposit(Sink s, float[] positions, float[] molecules, int count){
+		//Records molecules[i] taken up at the position packed at 3 * i in positions. Call from the sink's owner only
+		if (conc == null){
+			return;
+		}
+		for (int i = 0; i < count; i++){
+			if (molecules[i] != 0){
+				int cx = Math.round(gridPosition(positions[3 * i] - sourceOffset + vessel.x / 2, 0));
+				int cy = Math.round(gridPosition(positions[3 * i + 1] + vessel.y / 2, 1));
+				int cz = Math.round(gridPosition(positions[3 * i + 2] + vessel.z / 2, 2));
+				s.add((cz * cells[1] + cy) * cells[0] + cx, molecules[i]);
+			}
+		}
+	}
+	
+	private synchronized void applySinks(){
+		if (!sinksSorted){
+			Collections.sort(sinks, new Comparator<Sink>(){
+				public int compare(Sink a, Sink b){
+					return Integer.compare(a.owner, b.owner);
+				}
+			});
+			sinksSorted = true;
+		}
+		float perMolecule = MOLECULES_TO_NM / (spacing[0] * spacing[1] * spacing[2]);
+		for (int i = 0; i < sinks.size(); i++){
+			Sink s = sinks.get(i);
+			for (int j = 0; j < s.count; j++){
+				int c = s.cells[j];
+				//Several cells can bind more than a grid cell holds. Only what was there is removed
+				float wanted = s.molecules[j] * perMolecule;
+				float removed = Math.min(conc[c], wanted);
+				conc[c] -= removed;
+				depleted += removed / perMolecule;
+				if (wanted > removed){
+					overdrawn += (wanted - removed) / perMolecule;
+				}
+			}
+			s.count = 0;
+		}
+	}
+	
+	public double getDepleted(){
+		return depleted;
+	}
+	
+	public double getOverdrawn(){
+		return overdrawn;
+	}
+	
+	public void setGridSize(float g){
+		gridSize = g;
+	}
+	
+	private void makeGrid(){
+		float[] size = {vessel.x, vessel.y, vessel.z};
+		cells = new int[3];
+		spacing = new float[3];
+		for (int i = 0; i < 3; i++){
+			cells[i] = Math.max(1, Math.round(size[i] / gridSize));
+			spacing[i] = size[i] / cells[i];
+		}
+		conc = new float[cells[0] * cells[1] * cells[2]];
+		Arrays.fill(conc, initialConcentration);
+		lineTasks = new LineSolveTask[3];
+		for (int dir = 0; dir < 3; dir++){
+			lineTasks[dir] = new LineSolveTask(dir, 0, conc.length / cells[dir]);
+		}
+	}
+	
+	public void advance(long time, ForkJoinPool pool){
+		//Steps the solution forward to time (microseconds). Runs the line solves on pool if it is not null
+		if (conc == null){
+			makeGrid();
+		}
+		if (time <= solvedTime){
+			return;
+		}
+		applySinks();
+		float seconds = (time - solvedTime) / 1.0e6f;
+		int steps = (int)Math.ceil(seconds / MAX_STEP);
+		float dt = seconds / steps;
+		float survive = (float)Math.exp(-decay * dt);
+		stepSize = dt;
+		for (int s = 0; s < steps; s++){
+			for (int dir = 0; dir < 3; dir++){
+				LineSolveTask task = lineTasks[dir];
+				if (pool != null){
+					task.reinitialize();
+					pool.invoke(task);
+				}
+				else{
+					task.solveAll();
+				}
+			}
+			if (survive < 1){
+				for (int i = 0; i < conc.length; i++){
+					conc[i] *= survive;
+				}
+			}
+		}
+		solvedTime = time;
+	}
+	
+	private void solveLines(int dir, float dt, int start, int end, float[] cp, float[] dp){
+		//Implicit diffusion along direction dir for lines start up to (not including) end
+		//cp and dp are scratch space at least as long as a line
+		int n = cells[dir];
+		if (n < 2 && !(dir == axis)){
+			return;
+		}
+		float r = diffusion * dt / (spacing[dir] * spacing[dir]);
+		//The source is half a cell from the first cell on the gradient's axis
+		float sourceR = dir == axis ? 2 * r : 0;
+		int stride = dir == 0 ? 1 : (dir == 1 ? cells[0] : cells[0] * cells[1]);
+		for (int line = start; line < end; line++){
+			int base;
+			switch(dir){
+			case 0:
+				base = line * n;
+				break;
+			case 1:
+				base = (line / cells[0]) * cells[0] * cells[1] + line % cells[0];
+				break;
+			default:
+				base = line;
+			}
+			//Thomas algorithm: -r on both off diagonals, 1 + 2r on the diagonal except at the walls
+			float b = (n > 1 ? 1 + r : 1) + sourceR;
+			cp[0] = n > 1 ? -r / b : 0;
+			dp[0] = (conc[base] + sourceR * sourceConcentration) / b;
+			for (int i = 1; i < n; i++){
+				b = (i == n - 1 ? 1 + r : 1 + 2 * r);
+				float m = b + r * cp[i-1];
+				cp[i] = -r / m;
+				dp[i] = (conc[base + i * stride] + r * dp[i-1]) / m;
+			}
+			float u = dp[n-1];
+			conc[base + (n - 1) * stride] = u;
+			for (int i = n - 2; i >= 0; i--){
+				u = dp[i] - cp[i] * u;
+				conc[base + i * stride] = u;
+			}
+		}
+	}
+	
+	private class LineSolveTask extends RecursiveAction{
+		//Solves lines start up to (not including) end, split in halves down to MIN_LINES
+		//The tree is kept for the life of the grid, so each leaf keeps its own scratch space
+		private static final long serialVersionUID = 1L;
+		private int dir, start, end;
+		private LineSolveTask left, right; //null for a leaf
+		private float[] cp, dp;
+		
+		public LineSolveTask(int d, int s, int e){
+			dir = d;
+			start = s;
+			end = e;
+			if (end - start <= MIN_LINES){
+				cp = new float[cells[dir]];
+				dp = new float[cells[dir]];
+			}
+			else{
+				int middle = (start + end) / 2;
+				left = new LineSolveTask(dir, start, middle);
+				right = new LineSolveTask(dir, middle, end);
+			}
+		}
+		
+		@Override
+		protected void compute(){
+			if (left == null){
+				solveLines(dir, stepSize, start, end, cp, dp);
+				return;
+			}
+			//Finished tasks have to be reset before they can run again
+			left.reinitialize();
+			right.reinitialize();
+			invokeAll(left, right);
+		}
+		
+		public void solveAll(){
+			//Solves every line on this thread
+			if (left == null){
+				solveLines(dir, stepSize, start, end, cp, dp);
+			}
+			else{
+				left.solveAll();
+				right.solveAll();
+			}
+		}
+	}
+	
+	private float gridPosition(float p, int dir){
+		//Position in cell widths from the first cell center, kept inside the grid
+		float c = p / spacing[dir] - 0.5f;
+		if (!(c > 0)){
+			return 0;
+		}
+		return Math.min(c, cells[dir] - 1);
+	}
+	
+	private float sample(float x, float y, float z){
+		//Trilinear interpolation between cell centers. Positions outside the vessel use the nearest face
+		//x is the distance from the source, y and z are simulation positions
+		float cx = gridPosition(x - sourceOffset + vessel.x / 2, 0);
+		float cy = gridPosition(y + vessel.y / 2, 1);
+		float cz = gridPosition(z + vessel.z / 2, 2);
+		int ix = Math.min((int)cx, Math.max(cells[0] - 2, 0));
+		int iy = Math.min((int)cy, Math.max(cells[1] - 2, 0));
+		int iz = Math.min((int)cz, Math.max(cells[2] - 2, 0));
+		float fx = cx - ix, fy = cy - iy, fz = cz - iz;
+		int sx = cells[0] > 1 ? 1 : 0;
+		int sy = cells[1] > 1 ? cells[0] : 0;
+		int sz = cells[2] > 1 ? cells[0] * cells[1] : 0;
+		int i000 = (iz * cells[1] + iy) * cells[0] + ix;
+		float c00 = conc[i000] + fx * (conc[i000 + sx] - conc[i000]);
+		float c10 = conc[i000 + sy] + fx * (conc[i000 + sy + sx] - conc[i000 + sy]);
+		float c01 = conc[i000 + sz] + fx * (conc[i000 + sz + sx] - conc[i000 + sz]);
+		float c11 = conc[i000 + sz + sy] + fx * (conc[i000 + sz + sy + sx] - conc[i000 + sz + sy]);
+		float c0 = c00 + fy * (c10 - c00);
+		float c1 = c01 + fy * (c11 - c01);
+		return c0 + fz * (c1 - c0);
+	}
+	
+	@Override
+	public float getConcentration(long time, Vector3f position){
+		//Returns the solution at the last time advance was called
+		if (conc == null){
+			return initialConcentration;
+		}
+		return sample(position.x, position.y, position.z);
+	}
+	
+	@Override
+	public void getConcentrations(long time, float[] positions, float[] concentrations, int count){
+		if (conc == null){
+			Arrays.fill(concentrations, 0, count, initialConcentration);
+			return;
+		}
+		for (int i = 0; i < count; i++){
+			concentrations[i] = sample(positions[3 * i], positions[3 * i + 1], positions[3 * i + 2]);
+		}
+	}
+	
+	@Override
+	public int getProtein(){
+		return pro.getId();
+	}
+	
+	@Override
+	public float[] getColor(float con){
+		//white is minConcentration, the protein's color is maximum
+		float ratio = (con - getMinConcentration())/(getMaxConcentration() - getMinConcentration());
+		return pro.getColor(ratio);
+	}
+	
+	@Override
+	public int getAxis(){
+		return axis;
+	}
+	
+	@Override
+	public float getMaxConcentration(){
+		return Math.max(sourceConcentration, initialConcentration);
+	}
+	
+	@Override
+	public float getMinConcentration(){
+		return Math.min(sourceConcentration, initialConcentration);
+	}
+	
+	@Override
+	public void setAxis(int a){
+		axis = a;
+	}
+	
+	@Override
+	public void setBaseColor(float[] c){
+		//Color comes from the protein
+	}
+	
+	@Override
+	public void setMaxConcentration(float c){
+		//The concentration held at the source
+		sourceConcentration = c;
+	}
+	
+	@Override
+	public void setMinConcentration(float c){
+		//The concentration everywhere else at the start
+		initialConcentration = c;
+	}
+	
+	@Override
+	public void print(PrintStream p){
+		p.println("DiffusionGradient");
+		p.println("\tProtein ID: "+ getProtein());
+		p.println("\tDiffusion Coefficient: " + diffusion);
+		p.println("\tSource Concentration: " + sourceConcentration);
+		p.println("\tGrid Size: " + gridSize);
+	}
+	
+	private float getDistance(int i){
+		//Distance from the source of the center of grid cell i along the axis
+		float[] size = {vessel.x, vessel.y, vessel.z};
+		float d = (i + 0.5f) * size[axis] / Math.max(1, Math.round(size[axis] / gridSize));
+		if (axis == X_AXIS){
+			return d - vessel.x / 2 + sourceOffset;
+		}
+		return d - size[axis] / 2;
+	}
+	
+	@Override
+	public String getDataHeaders(){
+		String s = "Diffusion Gradient (diffusion coefficient " + diffusion + ")\n";
+		s = s + "Time Since Sim Start\tProtein";
+		float[] size = {vessel.x, vessel.y, vessel.z};
+		int n = Math.max(1, Math.round(size[axis] / gridSize));
+		for (int i = 0; i < n; i++){
+			s = s + "\t" + getDistance(i);
+		}
+		s = s + "\n";
+		return s;
+	}
+	
+	@Override
+	public void setOutputFile(BufferedWriter bw){
+		outputFile = bw;
+	}
+	
+	@Override
+	public void writeOutput(Simulation sim){
+		//Concentrations along the axis through the middle of the vessel
+		String s = sim.getFormattedTime() + "\t" + pro.getName();
+		float[] size = {vessel.x, vessel.y, vessel.z};
+		int n = Math.max(1, Math.round(size[axis] / gridSize));
+		for (int i = 0; i < n; i++){
+			//The middle of the vessel is at sourceOffset from the source along x
+			float[] position = {sourceOffset, 0, 0};
+			position[axis] = getDistance(i);
+			s = s + "\t" + getConcentration(sim.getCurrentTimeMicroseconds(), new Vector3f(position));
+		}
+		s = s + "\n";
+		try{
+			outputFile.write(s);
+		}
+		catch(IOException e){
+			sim.writeToLog(sim.getFormattedTime() + "\tFailed to write to gradient-" + pro.getName());
+		}
+	}
+}
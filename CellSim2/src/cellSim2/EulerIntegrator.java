@@ -0,0 +1,58 @@
+/**
+	 * Copyright (C) 2016 Terri Applewhite-Grosso and Nancy Griffeth
+	 * Package: cellSim2
+	 * File: TestRunner.java
+	 * Jul 14, 2016
+	 *
+	 *   Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+	 *
+	 *   The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+	 *
+	 *   THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+	 * 
+	 * 
+	 */
+
+package cellSim2;
+
+/**
+ * @author Terri Applewhite-Grosso
+ *
+ */
+public class EulerIntegrator implements KineticsIntegrator {
+	//One explicit Euler step per frame, with negative counts set to zero
+	//Only stable while deltaMicroSecs is small compared to the binding and trafficking times
+	
+	public void integrate(float deltaMicroSecs, float kon, float koff, float[] concentrations, float[] uptake, ReceptorStore store, int base, int[] segments, int count){
+		float[] unbound = store.getUnbound();
+		float[] bound = store.getBound();
+		float[] secretion = store.getSecretionRates();
+		float[] unboundInt = store.getUnboundIntRates();
+		float[] boundInt = store.getBoundIntRates();
+		for (int n = 0; n < count; n++){
+			int i = segments[n];
+			int j = base + i;
+			float l = concentrations[i];
+			float qr = secretion[j];
+			float kt = unboundInt[j];
+			float ke = boundInt[j];
+			if (uptake != null){
+				uptake[i] += deltaMicroSecs * ((kon*unbound[j]*l) - (koff * bound[j]));
+			}
+			float deltaR = deltaMicroSecs * ((-kon*unbound[j]*l)+(koff * bound[j])-(kt*unbound[j])+qr);
+			float deltaC = deltaMicroSecs * ((kon*unbound[j]*l) - (koff * bound[j]) - (ke * bound[j]));
+			unbound[j] += deltaR;
+			bound[j] += deltaC;
+			if (unbound[j] < 0){
+				unbound[j] = 0;
+			}
+			if (bound[j] < 0){
+				bound[j] = 0;
+			}
+		}
+	}
+	
+	public String getName(){
+		return "euler";
+	}
+}
@@ -0,0 +1,148 @@
+/**
+	 * Copyright (C) 2016 Terri Applewhite-Grosso and Nancy Griffeth
+	 * Package: cellSim2
+	 * File: TestRunner.java
+	 * Jul 14, 2016
+	 *
+	 *   Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+	 *
+	 *   The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+	 *
+	 *   THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+	 * 
+	 * 
+	 */
+
+package cellSim2;
+
+/**
+ * @author Terri Applewhite-Grosso
+ *
+ */
+public class ExactIntegrator implements KineticsIntegrator {
+	/**
+	 * With the ligand concentration fixed over a step the binding equations are
+	 * linear, x' = A x + b with x = (R, C), A = [-(a+kt), koff; a, -(koff+ke)],
+	 * a = kon*L and b = (qr, 0). The step is solved exactly:
+	 *   x(t) = f0(A) x0 + f1(A) b,   integral of x = f1(A) x0 + f2(A) b
+	 * with f0(z) = e^(zt), f1(z) = (e^(zt)-1)/z and f2(z) = (e^(zt)-1-zt)/z^2.
+	 * A has real eigenvalues l1 >= l2, so f(A) = f(l2) I + f[l1,l2] (A - l2 I)
+	 * where f[l1,l2] is the divided difference.
+	 * The solution is stable and stays non-negative for any step length.
+	 * Matrices are reused while a, kt and ke do not change between segments.
+	 */
+	private static final double SERIES_LIMIT = .1;
+	private static final double CLOSE_EIGENVALUES = 1e-4;
+	
+	public void integrate(float deltaMicroSecs, float kon, float koff, float[] concentrations, float[] uptake, ReceptorStore store, int base, int[] segments, int count){
+		float[] unbound = store.getUnbound();
+		float[] bound = store.getBound();
+		float[] secretion = store.getSecretionRates();
+		float[] unboundInt = store.getUnboundIntRates();
+		float[] boundInt = store.getBoundIntRates();
+		double t = deltaMicroSecs;
+		double[] v = new double[3];
+		double lastA = Double.NaN, lastKt = Double.NaN, lastKe = Double.NaN;
+		double e00 = 0, e01 = 0, e10 = 0, e11 = 0;
+		double p00 = 0, p01 = 0, p10 = 0, p11 = 0;
+		double q00 = 0, q10 = 0;
+		for (int n = 0; n < count; n++){
+			int i = segments[n];
+			int j = base + i;
+			double a = (double)kon * concentrations[i];
+			double kt = unboundInt[j];
+			double ke = boundInt[j];
+			if (a != lastA || kt != lastKt || ke != lastKe){
+				lastA = a;
+				lastKt = kt;
+				lastKe = ke;
+				double d00 = -(a + kt);
+				double d11 = -(koff + ke);
+				double half = (d00 - d11) / 2;
+				double disc = Math.sqrt(half * half + a * koff);
+				double mid = (d00 + d11) / 2;
+				double l2 = mid - disc;
+				//l1 from the determinant to avoid cancellation when it is near zero
+				double det = a * ke + kt * koff + kt * ke;
+				double l1 = (l2 < 0) ? det / l2 : 0;
+				//A - l2 I has diagonal (half + disc, disc - half)
+				double u, w;
+				if (half >= 0){
+					u = half + disc;
+					w = (u > 0) ? a * koff / u : 0;
+				}
+				else{
+					w = disc - half;
+					u = (w > 0) ? a * koff / w : 0;
+				}
+				//f0, f1 and f2 at l2 and their divided differences over l1, l2
+				phi(l2 * t, v);
+				double f0 = v[0], f1 = t * v[1], f2 = t * t * v[2];
+				double dd0, dd1, dd2;
+				if (2 * disc * t > CLOSE_EIGENVALUES){
+					phi(l1 * t, v);
+					double s = 2 * disc;
+					dd0 = (v[0] - f0) / s;
+					dd1 = (t * v[1] - f1) / s;
+					dd2 = (t * t * v[2] - f2) / s;
+				}
+				else{
+					//Nearly equal eigenvalues - use the derivatives at the midpoint
+					double z = mid * t;
+					phi(z, v);
+					dd0 = t * v[0];
+					dd1 = t * t * (v[1] - v[2]);
+					dd2 = t * t * t * (v[2] - 2 * phi3(z));
+				}
+				e00 = f0 + dd0 * u;
+				e11 = f0 + dd0 * w;
+				e01 = dd0 * koff;
+				e10 = dd0 * a;
+				p00 = f1 + dd1 * u;
+				p11 = f1 + dd1 * w;
+				p01 = dd1 * koff;
+				p10 = dd1 * a;
+				q00 = f2 + dd2 * u;
+				q10 = dd2 * a;
+			}
+			double r = unbound[j];
+			double c = bound[j];
+			double qr = secretion[j];
+			double r1 = e00 * r + e01 * c + p00 * qr;
+			double c1 = e10 * r + e11 * c + p10 * qr;
+			if (uptake != null){
+				double sumR = p00 * r + p01 * c + q00 * qr;
+				double sumC = p10 * r + p11 * c + q10 * qr;
+				uptake[i] += (float)(a * sumR - koff * sumC);
+			}
+			unbound[j] = (r1 > 0) ? (float)r1 : 0;
+			bound[j] = (c1 > 0) ? (float)c1 : 0;
+		}
+	}
+	
+	private static void phi(double z, double[] v){
+		//v = e^z, (e^z-1)/z, (e^z-1-z)/z^2
+		if (Math.abs(z) < SERIES_LIMIT){
+			v[0] = Math.exp(z);
+			v[1] = 1 + z * (1.0/2 + z * (1.0/6 + z * (1.0/24 + z * (1.0/120 + z * (1.0/720 + z * (1.0/5040 + z / 40320))))));
+			v[2] = 1.0/2 + z * (1.0/6 + z * (1.0/24 + z * (1.0/120 + z * (1.0/720 + z * (1.0/5040 + z * (1.0/40320 + z / 362880))))));
+			return;
+		}
+		double em1 = Math.expm1(z);
+		v[0] = em1 + 1;
+		v[1] = em1 / z;
+		v[2] = (em1 - z) / (z * z);
+	}
+	
+	private static double phi3(double z){
+		//(e^z-1-z-z^2/2)/z^3
+		if (Math.abs(z) < SERIES_LIMIT){
+			return 1.0/6 + z * (1.0/24 + z * (1.0/120 + z * (1.0/720 + z * (1.0/5040 + z * (1.0/40320 + z * (1.0/362880 + z / 3628800))))));
+		}
+		return (Math.expm1(z) - z - z * z / 2) / (z * z * z);
+	}
+	
+	public String getName(){
+		return "exact";
+	}
+}
@@ -19,13 +19,21 @@
 package cellSim2;
 
 
+import java.io.BufferedOutputStream;
 import java.io.BufferedReader;
 import java.io.BufferedWriter;
+import java.io.DataOutputStream;
 import java.io.File;
 import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
 import java.io.FileReader;
 import java.io.IOException;
 import java.io.PrintStream;
+import java.io.RandomAccessFile;
+import java.nio.FloatBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.concurrent.atomic.LongAdder;
 
 import javax.vecmath.Vector3f;
 
@@ -34,38 +42,100 @@ public class FileGradient implements Gradient{
 
 	/**
 	 * This file reads concentrations of a ligand from a text file
+	 * The whole table is read once. If it is bigger than the heap budget
+	 * it is kept in a memory-mapped scratch file instead of on the heap
 	 */
 	protected Protein pro;
 	protected int axis;
 	protected float maxConcentration;
 	protected float minConcentration;
 	
-	private File source;
-	private BufferedReader br;
+	private static final int FLOATS_PER_BLOCK = 1 << 28; //1 GB of floats in each mapped block
+	
+	protected File source;
 	private BufferedWriter outputFile;
-	private boolean gradientSuccessful;
-	private boolean finalConcentrations;
+	protected boolean gradientSuccessful;
 	
 	float[] baseColor;
 	float[] distances;
-	float[] prevConc;
-	float[] nextConc;
-	long previousTime; //These times should be in microseconds, although they are read in as seconds
-	long nextTime;
+	long[] times; //These times are in microseconds, although they are read in as seconds
+	int numTimes;
+	private float[] table; //concentration at time row, distance column is table[row * distances.length + column]
+	private FloatBuffer[] mappedTable; //used instead of table when the table is too big for the heap
+	private int rowsPerBlock;
+	//Lookup of the distance bin: cell (pos - distances[0]) * binScale gives the bin directly
+	//for evenly spaced distances, or through binTable for uneven ones
+	private boolean distancesSorted;
+	private float binScale;
+	private int numBins;
+	private int[] binTable;
+	//Concentrations at every distance for the last time asked for. Every query in a frame is at
+	//the same time, so only the first one interpolates between the rows of the table
+	private volatile Lattice lattice;
+	private final LongAdder cacheHits = new LongAdder();
+	private final LongAdder cacheMisses = new LongAdder();
 	
-	public FileGradient(Protein p, String filename) {
-		//System.out.println(filename);
+	private static class Lattice{
+		final long time;
+		final float[] concentrations;
+		
+		Lattice(long t, float[] c){
+			time = t;
+			concentrations = c;
+		}
+	}
+	
+	protected FileGradient(Protein p, String filename){
+		//The protein is null when the file is only being converted - see BinaryGradient
 		pro = p;
 		gradientSuccessful = false;
-		finalConcentrations = false;
 		outputFile = null;
 		axis = 0;
 		maxConcentration = Float.MIN_VALUE;
 		minConcentration = Float.MAX_VALUE;
-		baseColor = pro.getColor();
-		
+		if (pro != null){
+			baseColor = pro.getColor();
+		}
 		source = new File(filename);
-		//Try to initialize distances from file and determine minimum and maximum concentrations
+	}
+	
+	public FileGradient(Protein p, String filename, long heapBudget) {
+		this(p, filename);
+		//System.out.println(filename);
+		try {
+			readTable(heapBudget);
+			gradientSuccessful = true;
+		}
+		catch (FileNotFoundException e) {
+            System.err.println("File for Gradient could not be found: " + filename);
+            System.err.println("All concentrations for protein " + pro.getName() + " set to zero"); //UGH WHERE DO I STORE PROTEIN LIST?
+            maxConcentration = 0f;
+            minConcentration = 0f;
+        }
+		catch (IOException e) {
+        	System.err.println("Problem reading file for gradient: " + filename);
+        	e.printStackTrace();
+            System.err.println("All concentrations for protein " + pro.getName() + " set to zero"); //UGH WHERE DO I STORE PROTEIN LIST?
+            maxConcentration = 0f;
+            minConcentration = 0f;
+        }
+		catch (NumberFormatException e){
+        	System.err.println("Error reading number from file. Incorrectly formatted. ");
+        	maxConcentration = 0f;
+        	minConcentration = 0f;
+        }
+		catch (SimException e){
+        	System.err.println(e.getMessage());
+        	maxConcentration = 0f;
+        	minConcentration = 0f;
+        }
+	}
+	
+	void readTable(long heapBudget) throws IOException, SimException{
+		//Read the distances and every row of concentrations from the comma-separated source
+		BufferedReader br = null;
+		DataOutputStream spill = null;
+		File spillFile = null;
 		try {
 			//System.out.println("Initializing File Gradient (about line 79");
 			String line = "";
@@ -77,105 +147,23 @@ public class FileGradient implements Gradient{
             if (lineText.length < 2){
             	throw new SimException("Gradient File must have at least one distance included");
             }
-            //for (int i = 0; i < lineText.length; i++){
-            	//System.out.println(lineText[i]);
-            //}
-
             
             distances = new float[lineText.length-1];
             //First line is distances. First cell should be empty
             for (int i = 1; i < lineText.length; i++){
             	distances[i-1] = Float.parseFloat(lineText[i]);
             }
-            /*for (int i = 0; i < distances.length; i++){
-            	System.out.println(distances[i]);
-            }*/
-            prevConc = new float[distances.length];
-            nextConc = new float[distances.length];
-            
-            //Read in the next line to get the first time and the first concentration values
-            line = br.readLine();
-            lineText = line.split(",");
-            float value = Float.parseFloat(lineText[0]);
-            if (value > 0){
-            	//First time given is not 0. We'll set previous and next concentrations to same value
-            	nextTime = (long)(value*1.0e6);
-            	for (int i = 1; i < lineText.length; i++){
-            		value = Float.parseFloat(lineText[i]);
-            		prevConc[i-1] = value;
-            		nextConc[i-1] = value;
-            		if (value > maxConcentration){
-            			maxConcentration = value;
-            		}
-            		if (value < minConcentration){
-            			minConcentration = value;
-            		}
-            	}
-            	previousTime = -1L;
-            }
-            else{
-            	//First time is zero (or less?)
-            	previousTime = (long)(value * 1.0e6); //Times in microseconds!
-            	for (int i = 1; i < lineText.length; i++){
-            		value = Float.parseFloat(lineText[i]);
-            		prevConc[i-1] = value;
-            		if (value > maxConcentration){
-            			maxConcentration = value;
-            		}
-            		if (value < minConcentration){
-            			minConcentration = value;
-            		}
-            	}
-            }
-            
-            //System.out.println("previousTime " + previousTime);
-            //System.out.println("Max Conc: "  + maxConcentration);
-            //System.out.println("Min Conc: " + minConcentration);
-            //for (int i = 0; i < prevConc.length; i++){
-            //	System.out.print(prevConc[i] + "      ");
-            //}
-            //System.out.println("");
-            
+            int numDistances = distances.length;
+            long maxHeapRows = Math.max(heapBudget / (4L * numDistances), 1);
             
-            //If initial time was zero, read in the next line to get the next set of concentrations
-            if (previousTime >= 0){
-            	line = br.readLine();
-            	lineText = line.split(",");
-            	value = Float.parseFloat(lineText[0]);
-            	nextTime = (long)(value* 1.0e6);
-            	for (int i = 1; i < lineText.length; i++){
-            		value = Float.parseFloat(lineText[i]);
-            		if (value > maxConcentration){
-            			maxConcentration = value;
-            		}
-            		if (value < minConcentration){
-            			minConcentration = value;
-            		}
-            		nextConc[i-1] = value;
-        		}
-            }
-            if (previousTime < 0){
-            	previousTime = 0L;
-            }
-            //System.out.println("previousTime " + previousTime);
-            //System.out.println("nextTime " + nextTime);
-            //System.out.println("Max Conc: "  + maxConcentration);
-            //System.out.println("Min Conc: " + minConcentration);
-            //for (int i = 0; i < nextConc.length; i++){
-            //	System.out.print(nextConc[i] + "      ");
-            //}
-            //System.out.println("");
-           
-            //Now read in the rest of the concentrations to get maximum and minimum values
+            times = new long[16];
+            table = new float[16 * numDistances];
+            numTimes = 0;
             while ((line = br.readLine()) != null) {
                 lineText = line.split(",");
-                //for (int i = 0; i < lineText.length; i++){
-                //	System.out.print(lineText[i] +"    ");
-                //}
-                //System.out.println("");
                 //Start looking for concentrations at position 1 - zero is the time
                 for (int i = 1; i < lineText.length; i++){
-                		value = Float.parseFloat(lineText[i]);
+                		float value = Float.parseFloat(lineText[i]);
                 		if (value > maxConcentration){
                 			maxConcentration = value;
                 		}
@@ -183,33 +171,53 @@ public class FileGradient implements Gradient{
                 			minConcentration = value;
                 		}   
                 }
+                long t = (long)(Float.parseFloat(lineText[0]) * 1.0e6);
+                if (numTimes > 0 && t <= times[numTimes-1]){
+                	//Times must increase. Later rows for a time already read are not used
+                	continue;
+                }
+                if (lineText.length - 1 < numDistances){
+                	throw new SimException("Gradient File row at time " + lineText[0] + " does not have a concentration for every distance");
+                }
+                if (numTimes == times.length){
+                	times = Arrays.copyOf(times, numTimes * 2);
+                }
+                times[numTimes] = t;
+                if (spill == null && numTimes >= maxHeapRows){
+                	//Too big for the heap. Move what we have to a scratch file and keep going there
+                	spillFile = File.createTempFile("gradient", ".bin");
+                	spillFile.deleteOnExit();
+                	spill = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(spillFile)));
+                	for (int i = 0; i < numTimes * numDistances; i++){
+                		spill.writeFloat(table[i]);
+                	}
+                	table = null;
+                }
+                if (spill != null){
+                	for (int i = 1; i <= numDistances; i++){
+                		spill.writeFloat(Float.parseFloat(lineText[i]));
+                	}
+                }
+                else{
+                	if ((numTimes + 1) * numDistances > table.length){
+                		table = Arrays.copyOf(table, table.length * 2);
+                	}
+                	for (int i = 1; i <= numDistances; i++){
+                		table[numTimes * numDistances + i - 1] = Float.parseFloat(lineText[i]);
+                	}
+                }
+                numTimes++;
+            }
+            if (numTimes == 0){
+            	throw new SimException("Gradient File must have at least one time");
+            }
+            buildDistanceIndex();
+            if (spill != null){
+            	spill.close();
+            	spill = null;
+            	mapTable(spillFile, 0L);
             }
-            gradientSuccessful = true;
-
         } 
-		catch (FileNotFoundException e) {
-            System.err.println("File for Gradient could not be found: " + filename);
-            System.err.println("All concentrations for protein " + pro.getName() + " set to zero"); //UGH WHERE DO I STORE PROTEIN LIST?
-            maxConcentration = 0f;
-            minConcentration = 0f;
-        }
-		catch (IOException e) {
-        	System.err.println("Problem reading file for gradient: " + filename);
-        	e.printStackTrace();
-            System.err.println("All concentrations for protein " + pro.getName() + " set to zero"); //UGH WHERE DO I STORE PROTEIN LIST?
-            maxConcentration = 0f;
-            minConcentration = 0f;
-        }
-		catch (NumberFormatException e){
-        	System.err.println("Error reading number from file. Incorrectly formatted. ");
-        	maxConcentration = 0f;
-        	minConcentration = 0f;
-        }
-		catch (SimException e){
-        	System.err.println(e.getMessage());
-        	maxConcentration = 0f;
-        	minConcentration = 0f;
-        }
 		finally {
             if (br != null) {
                 try {
@@ -218,123 +226,249 @@ public class FileGradient implements Gradient{
                     e.printStackTrace();
                 }
             }
+            if (spill != null){
+            	try {
+            		spill.close();
+            	} catch (IOException e) {
+            		e.printStackTrace();
+            	}
+            }
         }
 	}
 	
+	void mapTable(File f, long offset) throws IOException{
+		//Maps numTimes rows of concentrations stored as floats starting at offset in f
+		table = null;
+		int numDistances = distances.length;
+		rowsPerBlock = Math.max(FLOATS_PER_BLOCK / numDistances, 1);
+		int numBlocks = (numTimes + rowsPerBlock - 1) / rowsPerBlock;
+		mappedTable = new FloatBuffer[numBlocks];
+		RandomAccessFile raf = new RandomAccessFile(f, "r");
+		try{
+			FileChannel fc = raf.getChannel();
+			for (int b = 0; b < numBlocks; b++){
+				int rows = Math.min(rowsPerBlock, numTimes - b * rowsPerBlock);
+				long start = offset + (long)b * rowsPerBlock * numDistances * 4;
+				//The mapping stays valid after the channel is closed
+				mappedTable[b] = fc.map(FileChannel.MapMode.READ_ONLY, start, (long)rows * numDistances * 4).asFloatBuffer();
+			}
+		}
+		finally{
+			raf.close();
+		}
+	}
+	
+	float getValue(int row, int column){
+		if (table != null){
+			return table[row * distances.length + column];
+		}
+		int block = row / rowsPerBlock;
+		return mappedTable[block].get((row - block * rowsPerBlock) * distances.length + column);
+	}
+	
+	private int findTime(long time){
+		//Returns the first row whose time is at least time or numTimes if time is past the last row
+		int lo = 0, hi = numTimes;
+		while (lo < hi){
+			int mid = (lo + hi) >>> 1;
+			if (times[mid] < time){
+				lo = mid + 1;
+			}
+			else{
+				hi = mid;
+			}
+		}
+		return lo;
+	}
+	
+	private int findNextRow(long time){
+		//Returns the row after the time, or numTimes if we are past the last time
+		int nextRow = findTime(time);
+		if (nextRow == 0 && times[0] <= 0){
+			//At or before a first time of zero
+			nextRow = 1;
+		}
+		return nextRow;
+	}
+	
+	private float getTimeRatio(long time, int nextRow){
+		//ratio from previousTime to nextTime
+		//If the first time given is not 0, the concentrations before it are the same as at it
+		long previousTime = nextRow == 0 ? 0L : Math.max(times[nextRow - 1], 0L);
+		long nextTime = times[nextRow];
+		long timeDiff = time - previousTime;
+		return timeDiff / (float)(nextTime - previousTime);
+	}
+	
+	void buildDistanceIndex(){
+		//Called once the distances are read
+		int n = distances.length;
+		distancesSorted = true;
+		for (int i = 1; i < n; i++){
+			if (!(distances[i] > distances[i-1])){
+				distancesSorted = false;
+			}
+		}
+		binTable = null;
+		if (!distancesSorted || n <= 2){
+			return;
+		}
+		float range = distances[n-1] - distances[0];
+		float step = range / (n - 1);
+		boolean even = true;
+		for (int i = 1; i < n - 1; i++){
+			if (Math.abs(distances[i] - (distances[0] + i * step)) > 1e-3f * step){
+				even = false;
+				break;
+			}
+		}
+		if (even){
+			//Bin i+1 starts at cell i
+			numBins = n - 1;
+			binScale = numBins / range;
+			return;
+		}
+		//Uneven - store the bin at the start of each cell, with a few cells for each distance
+		numBins = 4 * (n - 1);
+		binScale = numBins / range;
+		binTable = new int[numBins];
+		int j = 1;
+		for (int c = 0; c < numBins; c++){
+			float start = distances[0] + c / binScale;
+			while (j < n - 1 && start >= distances[j]){
+				j++;
+			}
+			binTable[c] = j;
+		}
+	}
+	
+	private int findDistance(float pos){
+		//Returns the index of the first distance past pos, but no less than 1 and no more than the last
+		int n = distances.length;
+		int j;
+		if (!distancesSorted){
+			j = 1;
+			while (pos >= distances[j] && j < n-1){
+				j++;
+			}
+			return j;
+		}
+		if (n <= 2){
+			return 1;
+		}
+		float cell = (pos - distances[0]) * binScale;
+		if (!(cell >= 0)){
+			j = 1;
+		}
+		else if (cell >= numBins){
+			j = n - 1;
+		}
+		else if (binTable == null){
+			j = (int)cell + 1;
+		}
+		else{
+			j = binTable[(int)cell];
+		}
+		//The cell only gives a starting guess. Rounding can put it one bin off
+		//and a cell of an uneven grid can hold more than one distance
+		while (j > 1 && !(pos >= distances[j-1])){
+			j--;
+		}
+		while (j < n - 1 && pos >= distances[j]){
+			j++;
+		}
+		return j;
+	}
+	
+	private float[] getLattice(long time, int uses){
+		//Returns the concentrations at each distance at this time, making them if the time has changed
+		//A new array is made each time so that a thread still using the old one is not disturbed
+		Lattice l = lattice;
+		if (l != null && l.time == time){
+			cacheHits.add(uses);
+			return l.concentrations;
+		}
+		cacheMisses.increment();
+		cacheHits.add(uses - 1);
+		int nextRow = findNextRow(time);
+		boolean finalConcentrations = nextRow >= numTimes;
+		if (finalConcentrations){
+			nextRow = numTimes - 1;
+		}
+		int prevRow = Math.max(nextRow - 1, 0);
+		float timeRatio = getTimeRatio(time, nextRow);
+		float[] conc = new float[distances.length];
+		for (int i = 0; i < conc.length; i++){
+			if (finalConcentrations){
+				//We are past the maximum time
+				conc[i] = getValue(nextRow, i);
+			}
+			else{
+				float prev = getValue(prevRow, i);
+				conc[i] = prev + timeRatio * (getValue(nextRow, i) - prev);
+			}
+		}
+		lattice = new Lattice(time, conc);
+		return conc;
+	}
+	
+	public long getCacheHits(){
+		return cacheHits.sum();
+	}
+	
+	public long getCacheMisses(){
+		return cacheMisses.sum();
+	}
+	
 	@Override
 	public float getConcentration(long time, Vector3f position){
 		//System.out.println("Getting concentration at " + time + "micro_sec at " + position.toString());
 		//Time is in microseconds!!!
-		float[] pos = new float[3];
-		position.get(pos); //pos has the values copied from position
 		if (gradientSuccessful){
-			if (time  > nextTime && !finalConcentrations){
-				//pull in the next line of the file - The first number should be the time > nextTime
-				//System.out.println("Pulling in next line of concentrations");
-				try {
-					String line = "";
-		            br = new BufferedReader(new FileReader(source));
-		            //skip first line - no time data
-		            line = br.readLine();
-		            
-		            while ((line = br.readLine()) != null) {
-		            	String[] lineText = line.split(",");
-		            	float value = Float.parseFloat(lineText[0]);
-		            	long t = (long) (value * 1.0e6);
-		            	if (t > nextTime){
-		            		previousTime = nextTime;
-		            		nextTime = t;
-		            		for (int i = 1; i <= prevConc.length; i++){
-		            			prevConc[i-1] = nextConc[i-1];
-		            			value = Float.parseFloat(lineText[i]);
-		            			nextConc[i-1] = value;
-		            		}
-		            		//System.out.print("Previous Time: " + previousTime + ", ");
-		            		//System.out.print("Next Time " + nextTime);
-		            		//for (int i = 0; i < nextConc.length; i++){
-		            		//	System.out.println("Prev Conc: " + prevConc[i] + " Next Conc: " + nextConc[i]);
-		            		//}
-		            		break;
-		            	}
-		            }
-				}
-				catch (FileNotFoundException e) {
-		            System.err.println("File for Gradient could not be found: " + source.getName());
-		            System.err.println("All concentrations for protein " + pro.getName() + " set to zero"); //UGH WHERE DO I STORE PROTEIN LIST?
-		            maxConcentration = 0f;
-		            minConcentration = 0f;
-		        }
-				catch (IOException e) {
-		        	System.err.println("Problem reading file for gradient: " + source.getName());
-		        	e.printStackTrace();
-		            System.err.println("All concentrations for protein " + pro.getName() + " set to zero"); //UGH WHERE DO I STORE PROTEIN LIST?
-		            maxConcentration = 0f;
-		            minConcentration = 0f;
-		        }
-				catch (NumberFormatException e){
-		        	System.err.println("Error reading number from file. Incorrectly formatted.");
-		        	maxConcentration = 0f;
-		        	minConcentration = 0f;
-		        }
-				finally {
-		            if (br != null) {
-		                try {
-		                    br.close();
-		                } catch (IOException e) {
-		                    e.printStackTrace();
-		                }
-		            }
-		        }
-				
-				//if this is the last line of the file, i.e. no line > nextTime then set finalConcentrations to true
-				if (time > nextTime){
-					finalConcentrations = true;
-				}
-			}
-			
-			//find the two distances that position is in between given the axis
-			int lastPos = 0;
-			int nextPos = 1;
-			while (pos[axis] >= distances[nextPos] && nextPos < distances.length-1){
-					lastPos = nextPos;
-					nextPos++;
-			}
-			//ratio from previousTime to nextTime
-			long timeDiff = time - previousTime;
-			float timeRatio = timeDiff / (float)(nextTime - previousTime);
-			//ratio from previousDistance to position
-			float distDiff = pos[axis] - distances[lastPos];
-			float distRatio = distDiff / (float)(distances[nextPos] - distances[lastPos]);
-			
-			//System.out.println(distances[lastPos] + ", " + distances[nextPos] + ", " + pos[axis]);
-			if (pos[axis]>=distances[nextPos]){
-				//The distance is beyond the end of the given concentrations
-				//return the concentrations at the maximum distances (nextPos) at this time
-				if (finalConcentrations){
-					//We are past the maximum time
-					return nextConc[nextPos];
-				}
-				else{
-					float concentration = prevConc[nextPos]+ timeRatio * (nextConc[nextPos] - prevConc[nextPos]);
-					return concentration;
-				}
-			}
-			if (finalConcentrations){
-				//Not past the final distance, but past the final time
-				float concentration = nextConc[lastPos] + distRatio * (nextConc[nextPos] - nextConc[lastPos]);
-				return concentration;
+			float pos;
+			switch(axis){
+			case X_AXIS:
+				pos = position.x;
+				break;
+			case Y_AXIS:
+				pos = position.y;
+				break;
+			default:
+				pos = position.z;
 			}
-			//find concentration at this distance at previous time
-			float lastConcentration = prevConc[lastPos]+ distRatio * (prevConc[nextPos]-prevConc[lastPos]);
-			//find concentration at this distance at next time
-			float nextConcentration = nextConc[lastPos]+ distRatio * (nextConc[nextPos]-nextConc[lastPos]);
-			//find concentration between the two times
-			float concentration = lastConcentration + timeRatio * (nextConcentration - lastConcentration);
-			return concentration;
+			return interpolate(pos, getLattice(time, 1));
 		}
 		return 0f;
 	}
 	
+	@Override
+	public void getConcentrations(long time, float[] positions, float[] concentrations, int count){
+		if (!gradientSuccessful){
+			Arrays.fill(concentrations, 0, count, 0f);
+			return;
+		}
+		float[] conc = getLattice(time, count);
+		for (int i = 0; i < count; i++){
+			concentrations[i] = interpolate(positions[3 * i + axis], conc);
+		}
+	}
+	
+	private float interpolate(float pos, float[] conc){
+		//find the two distances that position is in between given the axis
+		int nextPos = findDistance(pos);
+		int lastPos = nextPos - 1;
+		//System.out.println(distances[lastPos] + ", " + distances[nextPos] + ", " + pos);
+		if (pos>=distances[nextPos]){
+			//The distance is beyond the end of the given concentrations
+			//return the concentrations at the maximum distances (nextPos) at this time
+			return conc[nextPos];
+		}
+		//ratio from previousDistance to position
+		float distDiff = pos - distances[lastPos];
+		float distRatio = distDiff / (float)(distances[nextPos] - distances[lastPos]);
+		return conc[lastPos] + distRatio * (conc[nextPos] - conc[lastPos]);
+	}
+	
 	public int getProtein(){
 		return pro.getId();
 	}
@@ -430,4 +564,58 @@ public class FileGradient implements Gradient{
 		return s;
 	}
 
+	
+	public static void main(String args[]){
+		//Times the distance lookup against a linear scan for small and large gradient files,
+		//with even and uneven distances, and checks that both find the same bins
+		//usage: FileGradient [lookups]
+		int lookups = 2000000;
+		if (args.length > 0){
+			lookups = Integer.parseInt(args[0]);
+		}
+		int[] columns = {10, 5000};
+		SimRandom random = new SimRandom(1);
+		for (int c = 0; c < columns.length; c++){
+			for (int uneven = 0; uneven < 2; uneven++){
+				int n = columns[c];
+				FileGradient g = new FileGradient(null, "benchmark");
+				g.distances = new float[n];
+				for (int i = 1; i < n; i++){
+					g.distances[i] = g.distances[i-1] + (uneven == 1 ? 1 + 20 * random.nextFloat() : 10);
+				}
+				g.buildDistanceIndex();
+				float max = g.distances[n-1] * 1.1f;
+				float[] pos = new float[lookups];
+				for (int i = 0; i < lookups; i++){
+					pos[i] = random.nextFloat() * max - 0.05f * max;
+				}
+				long sum = 0, mismatches = 0;
+				long start = System.nanoTime();
+				for (int i = 0; i < lookups; i++){
+					sum += g.findDistance(pos[i]);
+				}
+				long indexed = System.nanoTime() - start;
+				start = System.nanoTime();
+				for (int i = 0; i < lookups; i++){
+					int j = 1;
+					while (pos[i] >= g.distances[j] && j < n-1){
+						j++;
+					}
+					sum -= j;
+				}
+				long scanned = System.nanoTime() - start;
+				for (int i = 0; i < lookups; i++){
+					int j = 1;
+					while (pos[i] >= g.distances[j] && j < n-1){
+						j++;
+					}
+					if (j != g.findDistance(pos[i])){
+						mismatches++;
+					}
+				}
+				System.out.println(n + " distances, " + (uneven == 1 ? "uneven" : "even") + ": indexed " + (indexed / (float)lookups) + " ns, linear scan " + (scanned / (float)lookups) + " ns per lookup, " + mismatches + " mismatches" + (sum != 0 ? " CHECKSUM FAILED" : ""));
+			}
+		}
+	}
+
 }
@@ -1,7 +1,14 @@
 package cellSim2;
 
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 
 import javax.vecmath.Vector3f;
 
@@ -19,6 +26,15 @@ private final static int VERTEX_DIM = 3, EDGE_INDICES = 2, TRIANGLE_INDICES = 3;
 	private static int[][] trianglesByEdges;
 	private static int[][] trianglesByVertices;
 	private static TriangleIndexVertexArray[] indexVertexArray;
+	
+	//Levels are made the first time a cell asks for them and saved to a cache file
+	//that later runs map instead of growing the sphere again.
+	//The cache is kept in the user's home directory so that other users can't change the mesh.
+	//Set the cellSim2.meshCache property to a directory, or to an empty string to turn the cache off
+	//Change CACHE_VERSION whenever the way the sphere is grown changes
+	private static final int CACHE_MAGIC = 0x49434F53, CACHE_VERSION = 1, CACHE_HEADER = 20;
+	private static String cacheDir = System.getProperty("cellSim2.meshCache",
+			System.getProperty("user.home") + File.separator + ".cellSim2");
 		
 	private int detail_level;
 
@@ -28,10 +44,6 @@ private final static int VERTEX_DIM = 3, EDGE_INDICES = 2, TRIANGLE_INDICES = 3;
 		trianglesByEdges = new int[maxSteps][];
 		trianglesByVertices = new int[maxSteps][];
 		indexVertexArray = new TriangleIndexVertexArray[maxSteps];
-		initializeTriangles();
-		for (int i = 1; i < maxSteps; i++){
-			growSphere(i);
-		}
 		/*
 		for (int i = 0; i < maxSteps; i++){
 			System.out.println("Vertices Step " + i+ ": ");
@@ -67,13 +79,118 @@ private final static int VERTEX_DIM = 3, EDGE_INDICES = 2, TRIANGLE_INDICES = 3;
 				System.out.println("");
 			}
 		}*/
-
-		
-		for (int i = 0; i < maxSteps; i++){
-			makeIndexArray(i);
+	}
+	
+	private static synchronized TriangleIndexVertexArray getIndexArray(int step){
+		if (indexVertexArray[step] == null){
+			if (!readCache(step)){
+				makeLevel(step);
+				makeIndexArray(step);
+				writeCache(step);
+			}
 		}
+		return indexVertexArray[step];
+	}
+	
+	private static void makeLevel(int step){
+		//Grows the sphere up to step. Levels read from the cache have no edges, so they are grown again
+		if (edges[step] != null){
+			return;
+		}
+		if (step == 0){
+			initializeTriangles();
+		}
+		else{
+			makeLevel(step - 1);
+			growSphere(step);
+		}
+	}
+	
+	private static int getLevelTriangles(int step){
+		//Each step splits every triangle of the starting octahedron into four
+		return 8 << (2 * step);
+	}
+	
+	private static int getLevelVertices(int step){
+		return getLevelTriangles(step) / 2 + 2;
+	}
+	
+	private static File getCacheFile(int step){
+		if (cacheDir == null || cacheDir.length() == 0){
+			return null;
+		}
+		return new File(cacheDir, "icosphere" + step + ".bin");
+	}
+	
+	private static boolean readCache(int step){
+		File f = getCacheFile(step);
+		if (f == null || !f.isFile()){
+			return false;
+		}
+		try (FileChannel channel = FileChannel.open(f.toPath(), StandardOpenOption.READ)){
+			long size = channel.size();
+			if (size < CACHE_HEADER){
+				return false;
+			}
+			ByteBuffer map = channel.map(FileChannel.MapMode.READ_ONLY, 0, size).order(ByteOrder.LITTLE_ENDIAN);
+			int numFloats = map.getInt(12);
+			int numIndices = map.getInt(16);
+			if (map.getInt(0) != CACHE_MAGIC || map.getInt(4) != CACHE_VERSION || map.getInt(8) != step
+					|| numFloats != getLevelVertices(step) * VERTEX_DIM || numIndices != getLevelTriangles(step) * TRIANGLE_INDICES
+					|| size != CACHE_HEADER + 4L * (numFloats + numIndices)){
+				return false;
+			}
+			map.position(CACHE_HEADER);
+			ByteBuffer verticesBuffer = map.slice().order(ByteOrder.LITTLE_ENDIAN);
+			verticesBuffer.limit(4 * numFloats);
+			map.position(CACHE_HEADER + 4 * numFloats);
+			ByteBuffer indicesBuffer = map.slice().order(ByteOrder.LITTLE_ENDIAN);
+			
+			float[] v = new float[numFloats];
+			verticesBuffer.asFloatBuffer().get(v);
+			int[] t = new int[numIndices];
+			indicesBuffer.asIntBuffer().get(t);
+			vertices[step] = v;
+			trianglesByVertices[step] = t;
+			indexVertexArray[step] = new TriangleIndexVertexArray(numIndices/3, indicesBuffer, 4 * 3, numFloats/3, verticesBuffer, 4 * 3);
+			return true;
+		}
+		catch(IOException e){
+			return false;
+		}
+	}
+	
+	private static void writeCache(int step){
+		File f = getCacheFile(step);
+		if (f == null){
+			return;
+		}
+		float[] v = vertices[step];
+		int[] t = trianglesByVertices[step];
+		ByteBuffer bytes = ByteBuffer.allocate(CACHE_HEADER + 4 * (v.length + t.length)).order(ByteOrder.LITTLE_ENDIAN);
+		bytes.putInt(CACHE_MAGIC).putInt(CACHE_VERSION).putInt(step).putInt(v.length).putInt(t.length);
+		bytes.asFloatBuffer().put(v);
+		bytes.position(CACHE_HEADER + 4 * v.length);
+		bytes.asIntBuffer().put(t);
 		
-		
+		//Write to a temporary file and rename it so other runs never map half a file
+		File temp = null;
+		try{
+			File dir = f.getParentFile();
+			dir.mkdirs();
+			temp = File.createTempFile("icosphere", ".tmp", dir);
+			try (FileOutputStream fos = new FileOutputStream(temp)){
+				fos.write(bytes.array());
+			}
+			Files.move(temp.toPath(), f.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+		}
+		catch(IOException e){
+			System.err.println("Could not write mesh cache: " + f);
+			System.err.println("Error: " + e.toString());
+			if (temp != null){
+				temp.delete();
+			}
+		}
 	}
 	
 	private static void initializeTriangles(){
@@ -489,7 +606,7 @@ private final static int VERTEX_DIM = 3, EDGE_INDICES = 2, TRIANGLE_INDICES = 3;
 	}
 	
 	public GImpactMeshSphere(int dl){
-		super(indexVertexArray[dl]);
+		super(getIndexArray(dl));
 		detail_level = dl;
 		outputSomeData();
 	}
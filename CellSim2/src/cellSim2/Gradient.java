@@ -27,6 +27,8 @@ public interface Gradient {
 	//For now, no
 	public static final int X_AXIS = 0, Y_AXIS = 1, Z_AXIS = 2;
 	public float getConcentration(long time, Vector3f position);
+	//Fills concentrations[0..count-1] for count positions packed as x, y, z in positions
+	public void getConcentrations(long time, float[] positions, float[] concentrations, int count);
 	public int getProtein();
 	public float[] getColor(float con);
 	public int getAxis();
@@ -87,6 +87,24 @@ public class GradientWall extends Wall {
 		updateColors();
 	}
 	
+	@Override
+	public void scheduleUpdates(){
+		super.scheduleUpdates();
+		if (sim.isHeadless()){
+			//Colors are only seen when the wall is drawn
+			return;
+		}
+		sim.getScheduler().schedule(lastUpdate + secBetweenUpdates + 1, new SimScheduler.Task(){
+			public long run(long now){
+				if (toRemove){
+					return -1;
+				}
+				updateColors();
+				return now + secBetweenUpdates + 1;
+			}
+		});
+	}
+	
 	private void updateColors(){
 		if (grad == null){
 			return;
@@ -95,20 +113,18 @@ public class GradientWall extends Wall {
 		float startDist = this.origin.x - this.size.x/2;
 		Transform t = new Transform();
 		Vector3f pos = new Vector3f();
-		if (lastUpdate < 1 || now - lastUpdate > secBetweenUpdates){
-			//System.out.println("startDist: " + startDist + " dist from source: " + distanceFromSource);
-			//update the Colors for each wall segment
-			for (int i = 0; i < drawnSegments; i++){
-				gradWallShape.getChildTransform(i, t);
-				float dist = (t.origin.x - startDist) + this.distanceFromSource;
-				pos.x = dist;
-				pos.y = t.origin.y;
-				pos.z = t.origin.z;
-				//System.out.println("x pos" + t.origin.x + " dist: " + dist);
-				segColors[i] = new Vector3f(grad.getColor(grad.getConcentration(now, pos)));
-			}
-			lastUpdate = now;
+		//System.out.println("startDist: " + startDist + " dist from source: " + distanceFromSource);
+		//update the Colors for each wall segment
+		for (int i = 0; i < drawnSegments; i++){
+			gradWallShape.getChildTransform(i, t);
+			float dist = (t.origin.x - startDist) + this.distanceFromSource;
+			pos.x = dist;
+			pos.y = t.origin.y;
+			pos.z = t.origin.z;
+			//System.out.println("x pos" + t.origin.x + " dist: " + dist);
+			segColors[i] = new Vector3f(grad.getColor(grad.getConcentration(now, pos)));
 		}
+		lastUpdate = now;
 	}
 	
 	@Override
@@ -117,7 +133,7 @@ public class GradientWall extends Wall {
 			return false;
 		}
 		//System.out.println("GW 118: Special render");
-		updateColors();
+		//Colors are refreshed by the scheduler every secBetweenUpdates
 		Transform tran = new Transform(t);
 		//render each of the underlying boxes
 		for (int i = 0; i < drawnSegments; i++){
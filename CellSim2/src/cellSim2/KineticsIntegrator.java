@@ -0,0 +1,32 @@
+/**
+	 * Copyright (C) 2016 Terri Applewhite-Grosso and Nancy Griffeth
+	 * Package: cellSim2
+	 * File: TestRunner.java
+	 * Jul 14, 2016
+	 *
+	 *   Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+	 *
+	 *   The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+	 *
+	 *   THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+	 * 
+	 * 
+	 */
+
+package cellSim2;
+
+/**
+ * @author Terri Applewhite-Grosso
+ *
+ */
+public interface KineticsIntegrator {
+	//Advances receptor binding for count segments by deltaMicroSecs:
+	//  dR/dt = -kon*L*R + koff*C - kt*R + qr
+	//  dC/dt =  kon*L*R - koff*C - ke*C
+	//The ligand concentration L is held fixed over the step.
+	//Only the segments listed in segments[0..count-1] are advanced
+	//Segment i uses concentrations[i] and slot base+i of the store for R, C, qr, kt and ke
+	//If uptake is not null, uptake[i] gets the ligand bound from the medium, kon*L*R - koff*C over the step
+	public void integrate(float deltaMicroSecs, float kon, float koff, float[] concentrations, float[] uptake, ReceptorStore store, int base, int[] segments, int count);
+	public String getName();
+}
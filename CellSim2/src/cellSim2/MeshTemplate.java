@@ -0,0 +1,141 @@
+/**
+	 * Copyright (C) 2016 Terri Applewhite-Grosso and Nancy Griffeth
+	 * Package: cellSim2
+	 * File: TestRunner.java
+	 * Jul 14, 2016
+	 *
+	 *   Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+	 *
+	 *   The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+	 *
+	 *   THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+	 * 
+	 * 
+	 */
+
+
+package cellSim2;
+
+import javax.vecmath.Vector3f;
+
+import com.bulletphysics.collision.shapes.TriangleCallback;
+
+/**
+ * @author Terri Applewhite-Grosso
+ *
+ */
+public class MeshTemplate {
+	/**
+	 * The collision shape and triangle geometry shared by every SegmentedCell
+	 * with the same detail level and radius.
+	 * Areas, vertices and centers are in the cell's local frame, flat and
+	 * indexed by segment: 1 area, 9 vertex coordinates and 3 center coordinates each.
+	 * Templates are made once per simulation and must not be changed by the cells.
+	 */
+	private static Vector3f aabbMax = new Vector3f(1e30f, 1e30f, 1e30f);
+	private static Vector3f aabbMin = new Vector3f(-1e30f, -1e30f, -1e30f);
+	
+	private GImpactMeshSphere shape;
+	private int detailLevel;
+	private float radius;
+	private int numSegments;
+	private float[] areas;
+	private float[] vertices;
+	private float[] centers;
+	private float surfaceArea;
+	private float minY;
+	
+	public MeshTemplate(int dl, float r){
+		detailLevel = dl;
+		radius = r;
+		shape = new GImpactMeshSphere(dl);
+		shape.setLocalScaling(new Vector3f(r, r, r));
+		shape.updateBound();
+		minY = shape.getLowestY() * r;
+		numSegments = shape.getNumTriangles();
+		
+		areas = new float[numSegments];
+		vertices = new float[9 * numSegments];
+		centers = new float[3 * numSegments];
+		shape.processAllTriangles(new TriangleCallback(){
+			public void processTriangle(Vector3f[] triangle, int partId, int triangleIndex) {
+				int v = 9 * triangleIndex;
+				for (int i = 0; i < 3; i++){
+					vertices[v + 3 * i] = triangle[i].x;
+					vertices[v + 3 * i + 1] = triangle[i].y;
+					vertices[v + 3 * i + 2] = triangle[i].z;
+				}
+				areas[triangleIndex] = findTriangleArea(vertices, v);
+				int c = 3 * triangleIndex;
+				centers[c] = (triangle[0].x + triangle[1].x + triangle[2].x) / 3;
+				centers[c + 1] = (triangle[0].y + triangle[1].y + triangle[2].y) / 3;
+				centers[c + 2] = (triangle[0].z + triangle[1].z + triangle[2].z) / 3;
+			}
+		}, aabbMin, aabbMax);
+		
+		surfaceArea = 0;
+		for (int i = 0; i < numSegments; i++){
+			surfaceArea += areas[i];
+		}
+	}
+	
+	public static Long getKey(int dl, float r){
+		return Long.valueOf(((long)dl << 32) | (Float.floatToIntBits(r) & 0xFFFFFFFFL));
+	}
+	
+	private static float findTriangleArea(float[] v, int start){
+		//Find the lengths of the sides
+		double dx = v[start + 3] - v[start];
+		double dy = v[start + 4] - v[start + 1];
+		double dz = v[start + 5] - v[start + 2];
+		float a = (float)Math.sqrt(dx * dx + dy * dy + dz * dz);
+		dx = v[start + 6] - v[start + 3];
+		dy = v[start + 7] - v[start + 4];
+		dz = v[start + 8] - v[start + 5];
+		float b = (float)Math.sqrt(dx * dx + dy * dy + dz * dz);
+		dx = v[start + 6] - v[start];
+		dy = v[start + 7] - v[start + 1];
+		dz = v[start + 8] - v[start + 2];
+		float c = (float)Math.sqrt(dx * dx + dy * dy + dz * dz);
+		//Use Heron's forumla
+		float s = (float)(.5 * (a + b + c));
+		return (float)(Math.sqrt(s * (s-a) * (s-b) * (s-c)));
+	}
+	
+	public GImpactMeshSphere getShape(){
+		return shape;
+	}
+	
+	public int getDetailLevel(){
+		return detailLevel;
+	}
+	
+	public float getRadius(){
+		return radius;
+	}
+	
+	public int getNumSegments(){
+		return numSegments;
+	}
+	
+	public float[] getAreas(){
+		return areas;
+	}
+	
+	public float[] getVertices(){
+		return vertices;
+	}
+	
+	public float[] getCenters(){
+		return centers;
+	}
+	
+	public float getSurfaceArea(){
+		return surfaceArea;
+	}
+	
+	public float getMinY(){
+		return minY;
+	}
+
+}
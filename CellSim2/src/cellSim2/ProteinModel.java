@@ -0,0 +1,74 @@
+/**
+	 * Copyright (C) 2016 Terri Applewhite-Grosso and Nancy Griffeth
+	 * Package: cellSim2
+	 * File: TestRunner.java
+	 * Jul 14, 2016
+	 *
+	 *   Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+	 *
+	 *   The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+	 *
+	 *   THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+	 * 
+	 * 
+	 */
+
+package cellSim2;
+
+import java.util.ArrayList;
+
+/**
+ * @author Terri Applewhite-Grosso
+ *
+ */
+public class ProteinModel {
+	/**
+	 * The proteins and gradients of a simulation, indexed by protein id.
+	 * Built once the SimGenerator has made all proteins and gradients so
+	 * that the collision and kinetics code can look them up without searching.
+	 */
+	private Protein[] proteins;
+	private Gradient[] gradients; //by protein id, null if the protein has no gradient
+	private int[][] ligands; //by protein id
+	
+	public ProteinModel(ArrayList<Protein> pros, ArrayList<Gradient> grads){
+		proteins = new Protein[pros.size()];
+		ligands = new int[pros.size()][];
+		for (int i = 0; i < pros.size(); i++){
+			Protein p = pros.get(i);
+			proteins[p.getId()] = p;
+			ligands[p.getId()] = p.getLigands();
+		}
+		gradients = new Gradient[proteins.length];
+		for (int i = 0; i < grads.size(); i++){
+			Gradient g = grads.get(i);
+			int pro = g.getProtein();
+			//The first gradient for a protein is the one used
+			if (pro >= 0 && pro < gradients.length && gradients[pro] == null){
+				gradients[pro] = g;
+			}
+		}
+	}
+	
+	public int getNumProteins(){
+		return proteins.length;
+	}
+	
+	public Protein getProtein(int id){
+		if (id < 0 || id >= proteins.length){
+			return null;
+		}
+		return proteins[id];
+	}
+	
+	public Gradient getGradient(int id){
+		if (id < 0 || id >= gradients.length){
+			return null;
+		}
+		return gradients[id];
+	}
+	
+	public int[] getLigands(int id){
+		return ligands[id];
+	}
+}
@@ -0,0 +1,141 @@
+/**
+	 * Copyright (C) 2016 Terri Applewhite-Grosso and Nancy Griffeth
+	 * Package: cellSim2
+	 * File: TestRunner.java
+	 * Jul 14, 2016
+	 *
+	 *   Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+	 *
+	 *   The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+	 *
+	 *   THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+	 * 
+	 * 
+	 */
+
+
+package cellSim2;
+
+import java.util.Arrays;
+
+/**
+ * @author Terri Applewhite-Grosso
+ *
+ */
+public class ReceptorStore {
+	/**
+	 * Unbound, bound and maximum receptor counts for every surface segment
+	 * of every object in the simulation, kept in three flat arrays.
+	 * A cell takes one contiguous range per receptor, indexed by segment,
+	 * so a receptor can be updated for the whole cell in a single loop.
+	 * SurfaceSegments only hold the slot of each of their receptors.
+	 * The trafficking rates for each slot are set when the receptor is added,
+	 * already scaled to the segment's share of the surface.
+	 * Ranges are handed out while the simulation is set up and are not reused.
+	 */
+	private float[] unbound;
+	private float[] bound;
+	private float[] max;
+	private float[] secretion;
+	private float[] unboundInt;
+	private float[] boundInt;
+	private int size;
+	
+	public ReceptorStore(){
+		unbound = new float[256];
+		bound = new float[256];
+		max = new float[256];
+		secretion = new float[256];
+		unboundInt = new float[256];
+		boundInt = new float[256];
+		size = 0;
+	}
+	
+	public synchronized int allocate(int length){
+		//Returns the first slot of a new range of length zeroed slots
+		int base = size;
+		if (size + length > unbound.length){
+			int newLength = Math.max(unbound.length * 2, size + length);
+			unbound = Arrays.copyOf(unbound, newLength);
+			bound = Arrays.copyOf(bound, newLength);
+			max = Arrays.copyOf(max, newLength);
+			secretion = Arrays.copyOf(secretion, newLength);
+			unboundInt = Arrays.copyOf(unboundInt, newLength);
+			boundInt = Arrays.copyOf(boundInt, newLength);
+		}
+		size += length;
+		return base;
+	}
+	
+	public int size(){
+		return size;
+	}
+	
+	//The arrays are replaced when the store grows, so do not keep them past set up
+	public float[] getUnbound(){
+		return unbound;
+	}
+	
+	public float[] getBound(){
+		return bound;
+	}
+	
+	public float[] getMax(){
+		return max;
+	}
+	
+	public float[] getSecretionRates(){
+		return secretion;
+	}
+	
+	public float[] getUnboundIntRates(){
+		return unboundInt;
+	}
+	
+	public float[] getBoundIntRates(){
+		return boundInt;
+	}
+	
+	public float getUnbound(int slot){
+		return unbound[slot];
+	}
+	
+	public float getBound(int slot){
+		return bound[slot];
+	}
+	
+	public float getMax(int slot){
+		return max[slot];
+	}
+	
+	public void setTrafficking(int slot, float sec, float uInt, float bInt){
+		secretion[slot] = sec;
+		unboundInt[slot] = uInt;
+		boundInt[slot] = bInt;
+	}
+	
+	public boolean isBlank(int slot){
+		//No trafficking - matches TraffickingInfo.isBlank
+		return (secretion[slot] == 0 && unboundInt[slot] == 0 && boundInt[slot] == 0);
+	}
+	
+	public void addReceptors(int slot, float molecules){
+		//New receptors are unbound
+		unbound[slot] += molecules;
+		max[slot] += molecules;
+	}
+	
+	public void setUnbound(int slot, float molecules){
+		unbound[slot] = molecules;
+	}
+	
+	public void setBound(int slot, float molecules){
+		bound[slot] = molecules;
+	}
+	
+	public void bind(int slot, float molecules){
+		//Move molecules from unbound to bound
+		unbound[slot] -= molecules;
+		bound[slot] += molecules;
+	}
+}
@@ -20,6 +20,7 @@ import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileWriter;
+import java.util.BitSet;
 import java.util.HashSet;
 import java.util.HashMap;
 
@@ -35,7 +36,6 @@ import com.bulletphysics.dynamics.RigidBody;
 import com.bulletphysics.dynamics.RigidBodyConstructionInfo;
 import com.bulletphysics.linearmath.DefaultMotionState;
 import com.bulletphysics.linearmath.Transform;
-import com.bulletphysics.util.ObjectArrayList;
 
 import java.io.IOException;
 import java.io.InputStreamReader;
@@ -82,20 +82,40 @@ public class SegmentedCell implements SimObject{
 	private float maxLinVel, maxAngVel;
 	private int numSegments;
 	private int detailLevel;
-	private static GImpactMeshSphere cellShape;
+	private GImpactMeshSphere cellShape; //shared with every cell of the same detail level and radius
 	//private static SphereShape cellShape;
 	protected SimRigidBody body;
 	protected Transform trans;
 	private Simulation sim;
-	private ObjectArrayList<SimObject> collidedObjects;
+	private SimRandom random;
 	
 	private float surfaceArea;
-	private float[] triangleAreas;
-	private Vector3f[][] triangleVertices;
+	private float[] triangleAreas; //from the mesh template - shared, do not change
+	private float[] triangleVertices; //9 local coordinates per segment
 	private SurfaceSegment[] membraneSegments;
-	private Vector3f[] triangleCenters;
+	private ReceptorStore store;
+	private int[] receptorIds; //receptors in the order they were added
+	private int[] receptorBases; //start of each receptor's range in the store, indexed by segment
+	private float[] noLigand; //concentrations for ligands without a gradient
+	private long kineticsElapsed; //microseconds since the receptors were last updated
+	private int[] allSegments, activeSegments; //segments whose receptors are updated this step
+	private boolean[] asleep, steady; //see findActiveSegments. Null unless segments can sleep
+	private long[] sleptFor; //microseconds of updates skipped while asleep
+	private int[] wokenSegments, oneSegment; //segments that woke this step and still have their sleep to catch up on
+	private int numWoken;
+	private float[] previousUnbound, previousBound;
+	private float[][] sleepConcentrations; //by ligand id, then segment - the concentration at the segment's last update
+	private float[] triangleCenters; //3 local coordinates per segment
+	private Vector3f[] worldCenters; //segment centers, with x as distance from the source
+	private float[] packedCenters;
+	private int[] gradientLigands; //ligands my receptors bind that have a gradient
+	private float[][] ligandConcentrations; //by ligand id, then segment
+	private float[][] ligandUptake; //molecules bound from the medium this frame, by ligand id, then segment. Null unless ligand is depleted
+	private DiffusionGradient.Sink[] ligandSinks; //by ligand id
 	protected HashSet<Integer> surfaceProteins;
 	protected HashSet<Integer> receptorsBindTo;
+	protected BitSet surfaceProteinBits, receptorsBindToBits;
+	private ProteinModel proteinModel;
 	private boolean hasReceptors;
 	private boolean[] segCollided;
 	
@@ -116,6 +136,7 @@ public class SegmentedCell implements SimObject{
 		this.myId = cell_ids;
 		cell_ids++;
 		this.sim = s;
+		random = s.getRandomStream(SimRandom.CELL_STREAM, myId);
 		posValues = new Vector3f(0, 0, 0);
 		negValues = new Vector3f(0, 0, 0);
 		
@@ -132,18 +153,16 @@ public class SegmentedCell implements SimObject{
 		trans = new Transform();
 		trans.setIdentity();
 		trans.origin.set(this.origin);
-		float randTheta = (float)(sim.getNextRandomF() * Math.PI);
+		float randTheta = (float)(random.nextFloat() * Math.PI);
 		float si = (float)Math.sin(randTheta);
 		float cs = (float)Math.cos(randTheta);
 		Matrix3f rot = new Matrix3f(cs, 0, si, 0, 1, 0, -si, 0, cs);
 		trans.set(rot);
 		//System.out.println("Random Theta: " + randTheta);
 		
-		cellShape = new GImpactMeshSphere(dl);
-		//cellShape.outputSomeData();
-		cellShape.setLocalScaling(new Vector3f(radius, radius, radius));
-		cellShape.updateBound();
-		minY = cellShape.getLowestY() * radius;
+		MeshTemplate template = s.getMeshTemplate(dl, radius);
+		cellShape = template.getShape();
+		minY = template.getMinY();
 		//System.out.println("minY " + minY);
 		Vector3f localInertia = new Vector3f(0, 0, 0);
 		cellShape.calculateLocalInertia(mass, localInertia);
@@ -154,7 +173,7 @@ public class SegmentedCell implements SimObject{
 		body = new SimRigidBody(rbInfo, this);
 		//System.out.println(body.toString());
 		body.setCollisionFlags(CollisionFlags.CUSTOM_MATERIAL_CALLBACK);
-		numSegments = cellShape.getNumTriangles();
+		numSegments = template.getNumSegments();
 		
 		float downForce = (mass * 9.8f) - (volume * 9.8f);
 		body.setGravity(new Vector3f(0, -downForce, 0));
@@ -169,31 +188,16 @@ public class SegmentedCell implements SimObject{
 		
 		//Set the triangle areas
 		//TODO - When cells change shape this will have to be updated regularly
-		triangleAreas = new float[numSegments];
-		triangleAreaCallback areaCallback = new triangleAreaCallback(this);
-		cellShape.processAllTriangles(areaCallback, aabbMin, aabbMax);
-		surfaceArea = 0;
+		triangleAreas = template.getAreas();
+		surfaceArea = template.getSurfaceArea();
+		triangleVertices = template.getVertices();
+		triangleCenters = template.getCenters();
+		worldCenters = new Vector3f[numSegments];
 		for (int i = 0; i < numSegments; i++){
-			surfaceArea += triangleAreas[i];
-			//s.writeInvestigatingData("triangle " + i + " surface area " + triangleAreas[i] + "\n");
-		}
-		//System.out.println("Seg Cell 172: Segment 0 fraction = " + triangleAreas[0]/surfaceArea);
-		
-		triangleVertices = new Vector3f[numSegments][];
-		
-		triangleVerticesCallback tcb = new triangleVerticesCallback(this);
-		cellShape.processAllTriangles(tcb, aabbMin, aabbMax);
-		
-		//System.out.println("Cell dl: " + detailLevel);
-		triangleCenters = new Vector3f[numSegments];
-		for (int i = 0; i < numSegments; i++){
-			Vector3f[] p = triangleVertices[i];
-			float x = (p[0].x + p[1].x + p[2].x) / 3;
-			float y = (p[0].y + p[1].y + p[2].y) / 3;
-			float z = (p[0].z + p[1].z + p[2].z) / 3;
-			triangleCenters[i] = new Vector3f(x, y, z);
-			//System.out.println("   " + " segment: " + i + " center: " + triangleCenters[i] );
+			worldCenters[i] = new Vector3f();
 		}
+		packedCenters = new float[3 * numSegments];
+		gradientLigands = null;
 		
 		//triangleVerticesOutputCallback tvoc = new triangleVerticesOutputCallback(this, trans);
 		//cellShape.processAllTriangles(tvoc, aabbMin, aabbMax);
@@ -203,14 +207,24 @@ public class SegmentedCell implements SimObject{
 		//System.out.println("Total surface area = " + surfaceArea);
 		surfaceProteins = new HashSet<Integer>();
 		receptorsBindTo = new HashSet<Integer>();
+		surfaceProteinBits = new BitSet();
+		receptorsBindToBits = new BitSet();
+		proteinModel = sim.getProteinModel();
 		
+		store = sim.getReceptorStore();
+		receptorIds = new int[0];
+		receptorBases = new int[0];
+		noLigand = new float[numSegments];
+		allSegments = new int[numSegments];
+		for (int i = 0; i < numSegments; i++){
+			allSegments[i] = i;
+		}
 		membraneSegments = new SurfaceSegment[numSegments];
 		for (int i = 0; i < numSegments; i++){
-			membraneSegments[i] = new SurfaceSegment(this, i);
+			membraneSegments[i] = new SurfaceSegment(this, i, store);
+			membraneSegments[i].setWorldCenter(worldCenters[i]);
 		}
 		
-		collidedObjects = new ObjectArrayList<SimObject>();
-		
 		sim.setNeedsGImpact(true);
 		sim.addSimulationObject(this);
 		//System.out.println("Cell added to simulation");
@@ -544,16 +558,33 @@ public class SegmentedCell implements SimObject{
 			visibleProtein = proID; //by default, the first protein is the default
 			baseColor = getProtein(visibleProtein).getColor();
 		}
+		int r = 0;
+		while (r < receptorIds.length && receptorIds[r] != proID){
+			r++;
+		}
+		if (r == receptorIds.length){
+			//Each receptor has one range in the store for the whole cell
+			receptorIds = Arrays.copyOf(receptorIds, r + 1);
+			receptorBases = Arrays.copyOf(receptorBases, r + 1);
+			receptorIds[r] = proID;
+			receptorBases[r] = store.allocate(numSegments);
+		}
 		for (int i = 0; i < numSegments; i++){
 			//System.out.println("Seg Cell 392: Adding receptor to cell");
-			membraneSegments[i].addReceptor(proID, totalUnbound * triangleAreas[i]/surfaceArea, mpb);
+			int slot = receptorBases[r] + i;
+			membraneSegments[i].addReceptor(proID, totalUnbound * triangleAreas[i]/surfaceArea, mpb, slot);
+			//Same rates as getTraffickInfo gives for this segment
+			store.setTrafficking(slot, ti.getSecretionRate() * triangleAreas[i]/surfaceArea, ti.getUnboundIntRate(), ti.getBoundIntRate());
 		}
 		
 		int[] lig = sim.getProtein(proID).getLigands();
 		for (int i = 0; i < lig.length; i++){
 			receptorsBindTo.add(new Integer(lig[i]));
+			receptorsBindToBits.set(lig[i]);
 		}
 		surfaceProteins.add(new Integer(proID));
+		surfaceProteinBits.set(proID);
+		gradientLigands = null;
 	}
 	
 	public void addInteraction(Interaction i){
@@ -568,6 +599,14 @@ public class SegmentedCell implements SimObject{
 		return receptorsBindTo;
 	}
 	
+	public BitSet getSurfaceProteinBits(){
+		return surfaceProteinBits;
+	}
+	
+	public BitSet getReceptorsBindToBits(){
+		return receptorsBindToBits;
+	}
+	
 	public Gradient getGradient(int pro){
 		return sim.getGradient(pro);
 	}
@@ -583,8 +622,8 @@ public class SegmentedCell implements SimObject{
 			return;
 		}
 		
-		HashSet<Integer> otherProteins = c.getSurfaceProteins();
-		if (otherProteins == null || otherProteins.size() < 1){
+		BitSet otherProteins = c.getSurfaceProteinBits();
+		if (otherProteins == null || !receptorsBindToBits.intersects(otherProteins)){
 			//Nothing to bind to!
 			return;
 		}
@@ -603,6 +642,8 @@ public class SegmentedCell implements SimObject{
 		//Get the relevant surface segments
 		SurfaceSegment mySurface = getSurfaceSegment(mySegment);
 		SurfaceSegment theirSurface = c.getSurfaceSegment(theirSegment);
+		//Contact wakes a sleeping segment
+		mySurface.disturb();
 		if (theirSurface == null){
 			//They don't have receptors here!
 			return;
@@ -615,13 +656,12 @@ public class SegmentedCell implements SimObject{
 		}*/
 		
 		//Go through each of the receptors on my surface
-		for (Integer p: surfaceProteins){
-			Protein pro = sim.getProtein(p);
+		for (int p = surfaceProteinBits.nextSetBit(0); p >= 0; p = surfaceProteinBits.nextSetBit(p + 1)){
 			//Get the ligands for this protein
-			int[] ligands = pro.getLigands();
+			int[] ligands = proteinModel.getLigands(p);
 			for (int i = 0; i < ligands.length; i++){
 				int proId = ligands[i];
-				if (otherProteins.contains(proId)){
+				if (otherProteins.get(proId)){
 					//My receptor binds to the ligand on the other's surface
 					//System.out.println("My receptor: " + pro.getName() + " Their ligand: " + sim.getProtein(proId).getName());
 					//Try to make bonds
@@ -636,18 +676,6 @@ public class SegmentedCell implements SimObject{
 	
 	
 	
-	public boolean collidedWith(SimObject s){
-		if (collidedObjects.indexOf(s) == -1){
-			collidedObjects.add(s);
-			return false;
-		}
-		return true;
-	}
-	
-	public void clearCollisions(){
-		collidedObjects = new ObjectArrayList<SimObject>();
-	}
-	
 	public CollisionShape getCollisionShape(){
 		return cellShape;
 	}
@@ -657,6 +685,13 @@ public class SegmentedCell implements SimObject{
 	}
 	
 	public void updateObject(){
+		updateMotion();
+		updateSurface();
+	}
+	
+	public void updateMotion(){
+		//Everything that uses the simulation's random numbers or output files
+		//This must be called on the simulation thread, in order
 		if (!this.body.isActive()){
 			//System.out.println("Cell " + this.myId + " has been deactivated.");
 			this.body.activate();
@@ -665,7 +700,6 @@ public class SegmentedCell implements SimObject{
 		//System.out.println("Starting update: " + lastPosition.toString());
 		float downForce = (mass * 9.8f) - (volume * 9.8f);
 		this.body.setGravity(new Vector3f(0, -downForce, 0));
-		long now = sim.getCurrentTimeMicroseconds();
 		long delta = (long)sim.getDeltaTimeMicroseconds();
 	
 		if (delta > 0){
@@ -706,19 +740,257 @@ public class SegmentedCell implements SimObject{
 		if (sim.isInvestigating()){
 			writeOutput();
 		}
+	}
+	
+	public void updateSurface(){
+		//Updates the membrane segments. Only touches this cell, so cells
+		//can be updated in parallel once updateMotion has been called
+		long now = sim.getCurrentTimeMicroseconds();
+		long delta = (long)sim.getDeltaTimeMicroseconds();
+		//Receptor kinetics may run less often than the physics
+		kineticsElapsed += delta;
+		if (kineticsElapsed < sim.getKineticsIntervalMicroseconds()){
+			return;
+		}
+		delta = kineticsElapsed;
+		kineticsElapsed = 0;
 		
 		//TODO We are going to set the axis to be the x for now! 
 		//We probably want the distance from source to be attached to the gradient
 		//System.out.println("Cell center: " + trans.origin);
-		for (int i = 0; i < membraneSegments.length; i++){
-			Vector3f cen = new Vector3f(triangleCenters[i]);
+		int numSegs = membraneSegments.length;
+		for (int i = 0; i < numSegs; i++){
+			Vector3f cen = worldCenters[i];
+			cen.set(triangleCenters[3 * i], triangleCenters[3 * i + 1], triangleCenters[3 * i + 2]);
 			trans.transform(cen);
 			cen.x = sim.getDistanceFromSource(cen.x);
-			membraneSegments[i].update(now, delta, cen);
+			packedCenters[3 * i] = cen.x;
+			packedCenters[3 * i + 1] = cen.y;
+			packedCenters[3 * i + 2] = cen.z;
+		}
+		//Sample each gradient for the whole cell at once
+		if (gradientLigands == null){
+			findGradientLigands();
+		}
+		for (int j = 0; j < gradientLigands.length; j++){
+			int lig = gradientLigands[j];
+			proteinModel.getGradient(lig).getConcentrations(now, packedCenters, ligandConcentrations[lig], numSegs);
+		}
+		if (ligandUptake != null){
+			for (int j = 0; j < gradientLigands.length; j++){
+				float[] up = ligandUptake[gradientLigands[j]];
+				if (up != null){
+					Arrays.fill(up, 0f);
+				}
+			}
+		}
+		updateReceptors(delta);
+		//Give the bound ligand back to gradients that can be depleted
+		if (ligandUptake != null){
+			for (int j = 0; j < gradientLigands.length; j++){
+				int lig = gradientLigands[j];
+				if (ligandSinks[lig] != null){
+					DiffusionGradient dg = (DiffusionGradient)proteinModel.getGradient(lig);
+					dg.deposit(ligandSinks[lig], packedCenters, ligandUptake[lig], numSegs);
+				}
+			}
 		}
 		
 	}
 	
+	private void updateReceptors(float deltaMicroSecs){
+		//Runs the simulation's kinetics integrator over each receptor's range in the store
+		KineticsIntegrator integrator = sim.getKineticsIntegrator();
+		float[] unbound = store.getUnbound();
+		float[] bound = store.getBound();
+		int numSegs = membraneSegments.length;
+		float tolerance = sim.getSegmentSleepTolerance();
+		//Segments that take up ligand from the medium are never at rest
+		boolean sleeping = tolerance > 0 && ligandUptake == null;
+		int[] active = allSegments;
+		int numActive = numSegs;
+		if (sleeping){
+			numActive = findActiveSegments((long)deltaMicroSecs, tolerance);
+			active = activeSegments;
+		}
+		if (tolerance > 0){
+			sim.countSegmentUpdates(numSegs, numSegs - numActive);
+		}
+		for (int r = 0; r < receptorIds.length; r++){
+			int base = receptorBases[r];
+			Protein pro = proteinModel.getProtein(receptorIds[r]);
+			if (store.isBlank(base)){
+				//Reduce using half life. Receptors after this one are not updated
+				float minutes = deltaMicroSecs / 1000000f / 60;
+				float decay = (float)Math.pow(.5, minutes/pro.getHalfLife());
+				for (int i = base; i < base + numSegs; i++){
+					unbound[i] = unbound[i]*decay;
+				}
+				return;
+			}
+			if (sleeping){
+				catchUp(integrator, pro, base);
+				for (int n = 0; n < numActive; n++){
+					int i = active[n];
+					previousUnbound[i] = unbound[base + i];
+					previousBound[i] = bound[base + i];
+				}
+			}
+			int[] ligands = pro.getLigands();
+			for (int k = 0; k < ligands.length; k++){
+				int lig = ligands[k];
+				float[] conc = null;
+				if (ligandConcentrations != null && lig < ligandConcentrations.length){
+					conc = ligandConcentrations[lig];
+				}
+				float[] up = null;
+				if (ligandUptake != null && lig < ligandUptake.length){
+					up = ligandUptake[lig];
+				}
+				integrator.integrate(deltaMicroSecs, pro.getBindingRate(k), pro.getReverseRate(k), (conc == null) ? noLigand : conc, up, store, base, active, numActive);
+				if (conc != null){
+					for (int n = 0; n < numActive; n++){
+						int i = active[n];
+						membraneSegments[i].setLastConcentration(conc[i]);
+					}
+				}
+			}
+			if (sleeping){
+				for (int n = 0; n < numActive; n++){
+					int i = active[n];
+					int j = base + i;
+					float change = Math.abs(unbound[j] - previousUnbound[i]) + Math.abs(bound[j] - previousBound[i]);
+					if (change > tolerance * (unbound[j] + bound[j])){
+						steady[i] = false;
+					}
+				}
+			}
+		}
+		if (sleeping){
+			fallAsleep(numActive, tolerance);
+		}
+	}
+	
+	private int findActiveSegments(long deltaMicroSecs, float tolerance){
+		//A segment sleeps once its receptors stopped changing and its ligand concentrations are unchanged.
+		//It wakes when it is touched, when a concentration moves, or when it has slept for the longest sleep.
+		//Fills activeSegments with the segments to update and returns how many there are
+		int numSegs = membraneSegments.length;
+		if (asleep == null){
+			activeSegments = new int[numSegs];
+			asleep = new boolean[numSegs];
+			steady = new boolean[numSegs];
+			sleptFor = new long[numSegs];
+			wokenSegments = new int[numSegs];
+			oneSegment = new int[1];
+			previousUnbound = new float[numSegs];
+			previousBound = new float[numSegs];
+		}
+		long maxSleep = sim.getSegmentMaxSleepMicroseconds();
+		int numActive = 0;
+		numWoken = 0;
+		for (int i = 0; i < numSegs; i++){
+			boolean disturbed = membraneSegments[i].takeDisturbed();
+			if (asleep[i]){
+				sleptFor[i] += deltaMicroSecs;
+				if (!disturbed && sleptFor[i] < maxSleep && concentrationsUnchanged(i, tolerance)){
+					continue;
+				}
+				asleep[i] = false;
+				//This step is updated with the others. The steps it skipped are caught up on first
+				sleptFor[i] -= deltaMicroSecs;
+				if (sleptFor[i] > 0){
+					wokenSegments[numWoken] = i;
+					numWoken++;
+				}
+			}
+			steady[i] = true;
+			activeSegments[numActive] = i;
+			numActive++;
+		}
+		return numActive;
+	}
+	
+	private void catchUp(KineticsIntegrator integrator, Protein pro, int base){
+		//Advances the receptor's slots in the segments that just woke over the time they slept,
+		//using the concentrations they had when they fell asleep. Sleeping segments take up no ligand
+		int[] ligands = pro.getLigands();
+		for (int n = 0; n < numWoken; n++){
+			int i = wokenSegments[n];
+			oneSegment[0] = i;
+			for (int k = 0; k < ligands.length; k++){
+				int lig = ligands[k];
+				float[] conc = noLigand;
+				if (lig < sleepConcentrations.length && sleepConcentrations[lig] != null){
+					conc = sleepConcentrations[lig];
+				}
+				integrator.integrate(sleptFor[i], pro.getBindingRate(k), pro.getReverseRate(k), conc, null, store, base, oneSegment, 1);
+			}
+		}
+	}
+	
+	private boolean concentrationsUnchanged(int seg, float tolerance){
+		for (int j = 0; j < gradientLigands.length; j++){
+			int lig = gradientLigands[j];
+			float c = ligandConcentrations[lig][seg];
+			float last = sleepConcentrations[lig][seg];
+			if (!(Math.abs(c - last) <= tolerance * Math.abs(last))){
+				return false;
+			}
+		}
+		return true;
+	}
+	
+	private void fallAsleep(int numActive, float tolerance){
+		//Puts the updated segments that have come to rest to sleep
+		for (int n = 0; n < numActive; n++){
+			int i = activeSegments[n];
+			if (steady[i] && concentrationsUnchanged(i, tolerance)){
+				asleep[i] = true;
+				sleptFor[i] = 0;
+			}
+			for (int j = 0; j < gradientLigands.length; j++){
+				int lig = gradientLigands[j];
+				sleepConcentrations[lig][i] = ligandConcentrations[lig][i];
+			}
+		}
+	}
+	
+	private void findGradientLigands(){
+		int count = 0, maxId = -1;
+		for (int lig = receptorsBindToBits.nextSetBit(0); lig >= 0; lig = receptorsBindToBits.nextSetBit(lig + 1)){
+			if (proteinModel.getGradient(lig) != null){
+				count++;
+				maxId = lig;
+			}
+		}
+		gradientLigands = new int[count];
+		ligandConcentrations = new float[maxId + 1][];
+		sleepConcentrations = new float[maxId + 1][];
+		ligandUptake = null;
+		ligandSinks = null;
+		count = 0;
+		for (int lig = receptorsBindToBits.nextSetBit(0); lig >= 0; lig = receptorsBindToBits.nextSetBit(lig + 1)){
+			Gradient g = proteinModel.getGradient(lig);
+			if (g != null){
+				gradientLigands[count] = lig;
+				ligandConcentrations[lig] = new float[membraneSegments.length];
+				//No segment can fall asleep before it has a concentration to compare with
+				sleepConcentrations[lig] = new float[membraneSegments.length];
+				Arrays.fill(sleepConcentrations[lig], Float.NaN);
+				count++;
+				if (sim.isDepletingLigand() && g instanceof DiffusionGradient){
+					if (ligandUptake == null){
+						ligandUptake = new float[maxId + 1][];
+						ligandSinks = new DiffusionGradient.Sink[maxId + 1];
+					}
+					ligandUptake[lig] = new float[membraneSegments.length];
+					ligandSinks[lig] = ((DiffusionGradient)g).makeSink(myId);
+				}
+			}
+		}
+	}
+	
 	public void setDensity(float d){
 		density = d;
 		volume = (float)(4.0/3.0 * Math.PI * radius * radius * radius);
@@ -732,15 +1004,15 @@ public class SegmentedCell implements SimObject{
 	
 	private Vector3f getRandomVector(float mag){
 		//http://mathworld.wolfram.com/SpherePointPicking.html
-		float m = sim.getNextRandomF() * mag;
+		float m = random.nextFloat() * mag;
 		float sum = 2;
 		float randX1 = 0;
 		float randX2 = 0;
 		float oneSquared = 0;
 		float twoSquared = 0;
 		while (sum >= 1.0f){
-			randX1 = sim.getNextRandomF() * 2 - 1.0f;
-			randX2 = sim.getNextRandomF() * 2 - 1.0f;
+			randX1 = random.nextFloat() * 2 - 1.0f;
+			randX2 = random.nextFloat() * 2 - 1.0f;
 			oneSquared = randX1 * randX1;
 			twoSquared = randX2 * randX2;
 			sum = oneSquared + twoSquared;
@@ -804,27 +1076,39 @@ public class SegmentedCell implements SimObject{
 	}
 	
 	public Vector3f getSegmentWorldNormal(int index){
-		Vector3f norm = new Vector3f(triangleCenters[index]);
-		Transform myTrans = new Transform();
+		Vector3f norm = new Vector3f();
+		getSegmentWorldNormal(index, new Transform(), norm);
+		return norm;
+	}
+	
+	public void getSegmentWorldNormal(int index, Transform myTrans, Vector3f norm){
+		norm.set(triangleCenters[3 * index], triangleCenters[3 * index + 1], triangleCenters[3 * index + 2]);
 		body.getMotionState().getWorldTransform(myTrans);
 		myTrans.transform(norm);
 		norm.sub(myTrans.origin);
 		norm.normalize();
 		//System.out.println("my final normal: " + norm);
-		return norm;
 	}
 	
 	public Vector3f[] getWorldCoordinates(int surface){
-		Transform myTrans = new Transform();
-		body.getMotionState().getWorldTransform(myTrans);
 		Vector3f[] myVertices = new Vector3f[3];
 		for (int i = 0; i < 3; i++){
-			myVertices[i] = new Vector3f(triangleVertices[surface][i]);
-			myTrans.transform(myVertices[i]);
+			myVertices[i] = new Vector3f();
 		}
+		getWorldCoordinates(surface, new Transform(), myVertices);
 		return myVertices;
 	}
 	
+	public int getWorldCoordinates(int surface, Transform myTrans, Vector3f[] myVertices){
+		body.getMotionState().getWorldTransform(myTrans);
+		int v = 9 * surface;
+		for (int i = 0; i < 3; i++){
+			myVertices[i].set(triangleVertices[v + 3 * i], triangleVertices[v + 3 * i + 1], triangleVertices[v + 3 * i + 2]);
+			myTrans.transform(myVertices[i]);
+		}
+		return 3;
+	}
+	
 	public void setVisible(boolean v){
 		visible = v;
 	}
@@ -838,6 +1122,10 @@ public class SegmentedCell implements SimObject{
 		return myId;
 	}
 	
+	public SimRandom getRandom(){
+		return random;
+	}
+	
 	
 	public float getMass(){
 		return mass;
@@ -855,6 +1143,17 @@ public class SegmentedCell implements SimObject{
 		return "Segmented Cell";
 	}
 	
+	public int getKind(){
+		int kind = MOBILE;
+		if (hasReceptors){
+			kind |= HAS_RECEPTORS;
+		}
+		if (!surfaceProteins.isEmpty()){
+			kind |= HAS_LIGAND_COATING;
+		}
+		return kind;
+	}
+	
 	public float getMinY(){
 		return minY;
 	}
@@ -1018,58 +1317,6 @@ public class SegmentedCell implements SimObject{
 		}
 	}
 	
-	private float findTriangleArea(Vector3f[] vertices){
-		//Find the lengths of the sides
-		float a = (float)Math.sqrt(Math.pow((vertices[1].x - vertices[0].x), 2) +
-				Math.pow((vertices[1].y - vertices[0].y), 2) + Math.pow((vertices[1].z - vertices[0].z), 2));
-		float b = (float)Math.sqrt(Math.pow((vertices[2].x - vertices[1].x), 2) +
-				Math.pow((vertices[2].y - vertices[1].y), 2) + Math.pow((vertices[2].z - vertices[1].z), 2));
-		float c = (float)Math.sqrt(Math.pow((vertices[2].x - vertices[0].x), 2) +
-				Math.pow((vertices[2].y - vertices[0].y), 2) + Math.pow((vertices[2].z - vertices[0].z), 2));
-		//Use Heron's forumla
-		float s = (float)(.5 * (a + b + c));
-		
-		float area = (float)(Math.sqrt(s * (s-a) * (s-b) * (s-c)));
-		
-		return area;
-	}
-
-	
-	private static class triangleAreaCallback extends TriangleCallback {
-		SegmentedCell parent;
-
-		public triangleAreaCallback(SegmentedCell p) {
-			this.parent = p;
-		}
-		
-		public void processTriangle(Vector3f[] triangle, int partId, int triangleIndex) {
-			//System.out.println("Processing triangle areas");
-			//find the area
-				
-			float area = parent.findTriangleArea(triangle);
-			parent.triangleAreas[triangleIndex] = area;
-			//System.out.println("triangle " + triangleIndex + " area " + area);
-			
-		}
-	}
-	
-	private static class triangleVerticesCallback extends TriangleCallback {
-		SegmentedCell parent;
-
-		public triangleVerticesCallback(SegmentedCell p) {
-			this.parent = p;
-		}
-		
-		public void processTriangle(Vector3f[] triangle, int partId, int triangleIndex) {
-			parent.triangleVertices[triangleIndex] = new Vector3f[3];
-			for (int i = 0; i < 3; i++){
-				parent.triangleVertices[triangleIndex][i] = new Vector3f(triangle[i]);
-			}
-			
-		}
-		
-	}
-	
 	private static class triangleVerticesOutputCallback extends TriangleCallback {
 		SegmentedCell parent;
 		Transform myTrans;
@@ -1094,5 +1341,76 @@ public class SegmentedCell implements SimObject{
 		}
 		
 	}
+	
+	private static HashMap<String, float[]> readFinalReceptors(File dir){
+		//Unbound and bound receptors in each segment of segmentData.csv at the last time written, by object, segment and protein
+		HashMap<String, float[]> receptors = new HashMap<String, float[]>();
+		String lastTime = "";
+		try{
+			BufferedReader br = new BufferedReader(new InputStreamReader(new FileInputStream(new File(dir, "segmentData.csv"))));
+			String line;
+			while ((line = br.readLine()) != null){
+				String[] v = line.split("\t");
+				if (v.length < 6 || !v[1].startsWith("Segmented Cell")){
+					continue;
+				}
+				if (v[0].compareTo(lastTime) != 0){
+					lastTime = v[0];
+					receptors.clear();
+				}
+				receptors.put(v[1] + "\t" + v[2] + "\t" + v[3], new float[]{Float.parseFloat(v[4]), Float.parseFloat(v[5])});
+			}
+			br.close();
+		}
+		catch(IOException|NumberFormatException e){
+			System.err.println("Could not read segment data in " + dir);
+			System.err.println("Error: " + e.toString());
+		}
+		return receptors;
+	}
+	
+	public static void main(String args[]){
+		//Checks that a run with sleeping segments ends with the receptors of the same run without sleeping
+		//Run the same input and seed with SimHeadless twice, with segmentSleepTolerance 0 and with the tolerance to check
+		//The difference is the unbound and bound receptors that moved, as a fraction of all receptors
+		//usage: SegmentedCell AWAKE_OUTPUT_DIR SLEEPING_OUTPUT_DIR TOLERANCE
+		if (args.length < 3){
+			System.err.println("Usage: AWAKE_OUTPUT_DIR SLEEPING_OUTPUT_DIR TOLERANCE");
+			System.exit(1);
+		}
+		HashMap<String, float[]> awake = readFinalReceptors(new File(args[0]));
+		HashMap<String, float[]> sleeping = readFinalReceptors(new File(args[1]));
+		float tolerance = Float.parseFloat(args[2]);
+		double[] awakeTotals = new double[2], sleepingTotals = new double[2];
+		double moved = 0, worst = 0;
+		int compared = 0;
+		for (String key : awake.keySet()){
+			float[] s = sleeping.get(key);
+			if (s == null){
+				continue;
+			}
+			float[] a = awake.get(key);
+			double segMoved = Math.abs(s[0] - a[0]) + Math.abs(s[1] - a[1]);
+			for (int i = 0; i < 2; i++){
+				awakeTotals[i] += a[i];
+				sleepingTotals[i] += s[i];
+			}
+			moved += segMoved;
+			if (a[0] + a[1] > 0){
+				worst = Math.max(worst, segMoved / (a[0] + a[1]));
+			}
+			compared++;
+		}
+		if (compared == 0){
+			System.out.println("No segments to compare");
+			return;
+		}
+		double difference = moved / (awakeTotals[0] + awakeTotals[1]);
+		System.out.println("Segments compared\t" + compared);
+		System.out.println("Unbound awake\t" + awakeTotals[0] + "\tsleeping\t" + sleepingTotals[0]);
+		System.out.println("Bound awake\t" + awakeTotals[1] + "\tsleeping\t" + sleepingTotals[1]);
+		System.out.println("Relative difference\t" + String.format("%.3g", difference) + "\ttolerance\t" + tolerance + "\t" + (difference <= tolerance ? "within" : "OUTSIDE"));
+		System.out.println("Largest segment difference\t" + String.format("%.3g", worst));
+	}
 
 }
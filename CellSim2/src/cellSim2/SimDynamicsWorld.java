@@ -0,0 +1,80 @@
+/**
+	 * Copyright (C) 2016 Terri Applewhite-Grosso and Nancy Griffeth
+	 * Package: cellSim2
+	 * File: TestRunner.java
+	 * Jul 14, 2016
+	 *
+	 *   Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+	 *
+	 *   The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+	 *
+	 *   THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+	 * 
+	 * 
+	 */
+
+
+package cellSim2;
+
+import com.bulletphysics.collision.broadphase.BroadphaseInterface;
+import com.bulletphysics.collision.broadphase.Dispatcher;
+import com.bulletphysics.collision.dispatch.CollisionConfiguration;
+import com.bulletphysics.dynamics.DiscreteDynamicsWorld;
+import com.bulletphysics.dynamics.constraintsolver.ConstraintSolver;
+import com.bulletphysics.dynamics.constraintsolver.TypedConstraint;
+
+/**
+ * @author Terri Applewhite-Grosso
+ *
+ */
+public class SimDynamicsWorld extends DiscreteDynamicsWorld {
+	/**
+	 * DiscreteDynamicsWorld removes a constraint with a search through its list.
+	 * Bonds remember where they are in the list, so this world removes them by
+	 * moving the last constraint into their place. The solver sorts the constraints
+	 * into islands every step, so the order of the list does not matter.
+	 */
+	
+	public SimDynamicsWorld(Dispatcher dispatcher, BroadphaseInterface pairCache, ConstraintSolver constraintSolver, CollisionConfiguration collisionConfiguration) {
+		super(dispatcher, pairCache, constraintSolver, collisionConfiguration);
+	}
+	
+	@Override
+	public void addConstraint(TypedConstraint constraint, boolean disableCollisionsBetweenLinkedBodies){
+		if (constraint instanceof BondConstraint){
+			((BondConstraint)constraint).worldIndex = constraints.size();
+		}
+		super.addConstraint(constraint, disableCollisionsBetweenLinkedBodies);
+	}
+	
+	@Override
+	public void removeConstraint(TypedConstraint constraint){
+		if (!(constraint instanceof BondConstraint)){
+			super.removeConstraint(constraint);
+			//Everything after it has moved down one
+			for (int i = 0; i < constraints.size(); i++){
+				TypedConstraint c = constraints.getQuick(i);
+				if (c instanceof BondConstraint){
+					((BondConstraint)c).worldIndex = i;
+				}
+			}
+			return;
+		}
+		BondConstraint bc = (BondConstraint)constraint;
+		int index = bc.worldIndex;
+		int last = constraints.size() - 1;
+		if (index < 0 || index > last || constraints.getQuick(index) != bc){
+			//Not in this world
+			return;
+		}
+		TypedConstraint moved = constraints.getQuick(last);
+		constraints.setQuick(index, moved);
+		if (moved instanceof BondConstraint){
+			((BondConstraint)moved).worldIndex = index;
+		}
+		constraints.removeQuick(last);
+		bc.worldIndex = -1;
+		bc.getRigidBodyA().removeConstraintRef(bc);
+		bc.getRigidBodyB().removeConstraintRef(bc);
+	}
+}
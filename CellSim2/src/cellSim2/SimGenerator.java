@@ -69,6 +69,16 @@ public class SimGenerator {
 	public int secBetweenImages;
 	public boolean displayImages;
 	public int speedUp;
+	public boolean parallelUpdate;
+	public int updateThreads;
+	public boolean aggregateBonds;
+	public int gradientHeapBudget;
+	public boolean ligandDepletion;
+	public String kineticsIntegrator;
+	public float kineticsInterval;
+	public boolean stochasticBinding;
+	public float segmentSleepTolerance;
+	public float segmentMaxSleep;
 	public float[] simMin = {Float.MAX_VALUE, Float.MAX_VALUE, Float.MAX_VALUE};
 	public float[] simMax = {Float.MIN_VALUE, Float.MIN_VALUE, Float.MIN_VALUE};
 	
@@ -76,6 +86,7 @@ public class SimGenerator {
 	public ArrayList<Gradient> gradients;
 	
 	public ImageGenerator imageGen;
+	private ProteinModel proteinModel;
 	
 	public SimGenerator(File in, File out){
 		inputFile = in;
@@ -103,6 +114,11 @@ public class SimGenerator {
 		//System.out.println("Proteins created");
 		gradients = new ArrayList<Gradient>();
 		createGradients();
+		proteinModel = new ProteinModel(proteins, gradients);
+	}
+	
+	public ProteinModel getProteinModel(){
+		return proteinModel;
 	}
 	
 	private void fillVariables(){
@@ -129,6 +145,9 @@ public class SimGenerator {
 	        			f.setLong(this, simValues.getValue(0L, f.getName()));
 	        			//System.out.println(f.getName() + f.getLong(this));
 	        			break;
+	        		case "java.lang.String":
+	        			f.set(this, simValues.getValue("", f.getName()));
+	        			break;
 	        		}
 	        	}
 	        	catch(SimException e){
@@ -203,7 +222,12 @@ public class SimGenerator {
 					//only valid parameters are "zero" or "file"
 					if (param.equalsIgnoreCase("file")){
 						//System.out.println("SG175 param: " + param);
-						g = new FileGradient(proteins.get(proId), line[1]);
+						if (BinaryGradient.isBinary(new File(line[1]))){
+							g = new BinaryGradient(proteins.get(proId), line[1]);
+						}
+						else{
+							g = new FileGradient(proteins.get(proId), line[1], (long)gradientHeapBudget * 1024 * 1024);
+						}
 						FileGradient test = (FileGradient)g;
 						if (!test.successfullyMade()){
 							System.err.println("FileGradient " + key + " not successful.");
@@ -215,6 +239,30 @@ public class SimGenerator {
 						g = new ZeroGradient(proId, Float.parseFloat(line[1]));
 						g.setBaseColor(colorList[proId % colorList.length]);
 					}
+					else if (param.equalsIgnoreCase("diffusion")){
+						//Solved as the simulation runs over the whole vessel
+						float d = -1f;
+						try{
+							d = Float.parseFloat(line[1]);
+						} catch (NumberFormatException e){
+							System.err.println("Diffusion coefficient " + line[1] + " not a valid float.");
+						}
+						if (!(d > 0)){
+							System.err.println("Diffusion coefficient must be positive. Making zero gradient");
+							g = new ZeroGradient(proId);
+						}
+						else{
+							Vector3f vesselSize = new Vector3f();
+							try{
+								vesselSize = simValues.getValue(vesselSize, "vessel");
+							}catch(SimException e){
+								System.err.println("Programming Error! Variable vessel does not have a default value.");
+								System.err.println("Program cannot proceed.");
+								System.exit(1);
+							}
+							g = new DiffusionGradient(proteins.get(proId), d, vesselSize, distFromSource - startX);
+						}
+					}
 					else{
 						System.err.println("Must create gradient before setting parameters");
 						System.err.println("Parameter " + param + " not set on gradient " + key);
@@ -241,6 +289,24 @@ public class SimGenerator {
 						g.setMaxConcentration(c);
 						//Works for both FileGradient (does nothing) or Zero Gradient
 						break;
+					case "gridSize":
+						if (!(g instanceof DiffusionGradient)){
+							System.err.println("Only diffusion gradients have a grid size. Not using.");
+							break;
+						}
+						float gs = -1f;
+						try{
+							gs = Float.parseFloat(line[1]);
+						} catch (NumberFormatException e){
+							System.err.println("Grid size " + line[1] + " not a valid float. Not using.");
+							break;
+						}
+						if (gs <= 0){
+							System.err.println("Grid size " + gs + " not valid. Must be positive. Not using");
+							break;
+						}
+						((DiffusionGradient)g).setGridSize(gs);
+						break;
 					case "Axis":
 					case "axis":
 						int a = -1;
@@ -494,6 +560,7 @@ public class SimGenerator {
 		}
 		for (int i = 0; i < walls.size(); i++){
 			sim.addSimulationObject(walls.get(i));
+			walls.get(i).scheduleUpdates();
 		}
 		Vector3f tempMin =new Vector3f();
 		Vector3f tempMax =new Vector3f();
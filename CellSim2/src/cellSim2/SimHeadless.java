@@ -0,0 +1,81 @@
+/**
+	 * Copyright (C) 2016 Terri Applewhite-Grosso and Nancy Griffeth
+	 * Package: cellSim2
+	 * File: TestRunner.java
+	 * Jul 14, 2016
+	 *
+	 *   Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+	 *
+	 *   The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+	 *
+	 *   THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+	 * 
+	 * 
+	 */
+
+package cellSim2;
+
+import java.io.File;
+
+/**
+ * @author Terri Applewhite-Grosso
+ *
+ */
+public class SimHeadless {
+	
+	/**
+	 * Runs a Simulation without LWJGL or a display.
+	 * This does the same job as SimLWJGL.main, but only steps the model until
+	 * the simulation is ready to quit. There is no keyboard, mouse or rendering,
+	 * so it can be used on machines without a screen.
+	 * Returns the number of steps per second of real time.
+	 */
+	public static float run(Simulation sim){
+		long startTime = System.nanoTime();
+		long steps = 0;
+		while (!sim.readyToQuit()){
+			sim.clientMoveAndDisplay();
+			steps++;
+		}
+		long elapsed = System.nanoTime() - startTime;
+		float stepsPerSecond = 0f;
+		if (elapsed > 0){
+			stepsPerSecond = (float)(steps / (elapsed / 1.0e9));
+		}
+		sim.writeToLog("Headless steps\t" + steps);
+		sim.writeToLog("Headless steps per second\t" + String.format("%.3f", stepsPerSecond));
+		sim.wrapUp();
+		return stepsPerSecond;
+	}
+	
+	public static void main(String[] args){
+		if (args.length < 2){
+			System.err.println("Usage: INPUT_FILE OUTPUT_DIR [SEED]");
+			System.exit(1);
+		}
+		SimGenerator sg = new SimGenerator(new File(args[0]), new File(args[1]));
+		long seed = -1;
+		if (args.length > 2){
+			try{
+				seed = Long.parseLong(args[2]);
+			}
+			catch(NumberFormatException e){
+				System.err.println("Seed must be a whole number. Found: " + args[2]);
+				System.err.println("Using a random seed");
+			}
+		}
+		
+		Simulation sim = null;
+		if (seed < 0){
+			sim = new Simulation(null, sg);
+		}
+		else{
+			sim = new Simulation(null, sg, seed);
+		}
+		sim.initPhysics();
+		
+		float stepsPerSecond = run(sim);
+		System.out.println("Simulation complete: " + sim.getNumFrames() + " steps, " + String.format("%.3f", stepsPerSecond) + " steps per second");
+	}
+
+}
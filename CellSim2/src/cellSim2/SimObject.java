@@ -25,22 +25,32 @@ import com.bulletphysics.demos.opengl.IGL;
 import com.bulletphysics.linearmath.Transform;
 import javax.vecmath.Vector3f;
 import java.io.BufferedWriter;
+import java.util.BitSet;
 import java.util.HashSet;
 
 
 public interface SimObject {
+		//Flags returned by getKind()
+		public static final int STATIC = 1; //never moves (walls)
+		public static final int MOBILE = 2;
+		public static final int HAS_RECEPTORS = 4;
+		public static final int HAS_LIGAND_COATING = 8; //has proteins on its surface that receptors may bind
+		
 		
 		public void collided(SimObject c, ManifoldPoint mp, long collID);
 		public boolean isMobile();
 		public CollisionShape getCollisionShape();
 		public SimRigidBody getRigidBody();
 		public void updateObject();
+		public void updateMotion();
+		public void updateSurface();
 		public Vector3f getColor3Vector();
 		public void setVisible(boolean v);
 		public boolean isVisible();
 		public int getID();
 		public float getMass();
 		public String getType();
+		public int getKind();
 		public void destroy();
 		public void markForRemoval();
 		public boolean isMarked();
@@ -56,6 +66,9 @@ public interface SimObject {
 		public float getSegmentArea(int index);
 		public Vector3f getSegmentWorldNormal(int index);
 		public Vector3f[] getWorldCoordinates(int surface);
+		//Versions that write into the caller's vectors. trans is scratch space
+		public void getSegmentWorldNormal(int index, Transform trans, Vector3f normal);
+		public int getWorldCoordinates(int surface, Transform trans, Vector3f[] vertices);
 		public String getSurfaceSegmentOutput();
 		public TraffickingInfo getTraffickInfo(int protein, int id);
 		public int getVisibleProtein();
@@ -63,9 +76,11 @@ public interface SimObject {
 		public Protein getProtein(int id);
 		public HashSet<Integer> getSurfaceProteins();
 		public HashSet<Integer> getReceptorsBindTo();
-		public boolean collidedWith(SimObject s);
-		public void clearCollisions();
+		//The same sets as bits indexed by protein id
+		public BitSet getSurfaceProteinBits();
+		public BitSet getReceptorsBindToBits();
 		public Gradient getGradient(int protein);
+		public SimRandom getRandom();
 		//public Interaction getInteraction(int id);
 
 }
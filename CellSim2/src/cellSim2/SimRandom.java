@@ -10,7 +10,19 @@ import java.io.File;
 public class SimRandom {
 	//Implementation of Marsaglia Xorshift random number generator
 	//https://www.javamex.com/tutorials/random_numbers/xorshift.shtml#.XFOoR89KjBI
+	//Streams are derived from a base seed with the SplitMix64 mixer so that every
+	//cell, wall and bond can draw its own numbers without depending on the order
+	//in which other objects draw theirs
+	public static final int SIMULATION_STREAM = 0;
+	public static final int CELL_STREAM = 1;
+	public static final int WALL_STREAM = 2;
+	public static final int BOND_STREAM = 3;
+	
+	private static final long GOLDEN_GAMMA = 0x9E3779B97F4A7C15L;
+	private static final float FLOAT_UNIT = 1.0f / (1 << 24);
+	
 	private long seed;
+	private long baseSeed;
 
 	public SimRandom() {
 		// Generate a relatively random seed
@@ -31,10 +43,68 @@ public class SimRandom {
 		catch (SecurityException|IOException ex){
 			seed = System.nanoTime();
 		}
+		baseSeed = seed;
+		seed = mix(seed);
 	}
 	
 	public SimRandom(long s){
-		seed = s;
+		setSeed(s);
+	}
+	
+	void setSeed(long s){
+		baseSeed = s;
+		//Xorshift gets stuck at zero and starts poorly from small seeds
+		seed = mix(s);
+	}
+	
+	private static long mix(long z){
+		//SplitMix64 step and finalizer
+		z += GOLDEN_GAMMA;
+		z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+		z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+		z = z ^ (z >>> 31);
+		if (z == 0){
+			z = GOLDEN_GAMMA;
+		}
+		return z;
+	}
+	
+	public SimRandom getStream(int kind, long id){
+		return getStream(kind, id, null);
+	}
+	
+	public SimRandom getStream(int kind, long id, SimRandom reuse){
+		//Returns a generator for one object of the given kind
+		//The stream depends only on the base seed, the kind and the id
+		//If reuse is not null it is reseeded and returned instead of making a new generator
+		long s = mix(baseSeed + kind * GOLDEN_GAMMA) + id * GOLDEN_GAMMA;
+		if (reuse == null){
+			return new SimRandom(s);
+		}
+		reuse.setSeed(s);
+		return reuse;
+	}
+	
+	public long getSeed(){
+		return baseSeed;
+	}
+	
+	public float nextFloat(){
+		//returns a value in [0.0, 1.0) from the top 24 bits
+		return (getNextSignedRandom() >>> 40) * FLOAT_UNIT;
+	}
+	
+	public void nextFloats(float[] values, int offset, int length){
+		//Fills values[offset] to values[offset+length-1] with numbers in [0.0, 1.0)
+		long x = seed;
+		int end = offset + length;
+		for (int i = offset; i < end; i++){
+			x ^= (x << 21);
+			x ^= (x >>> 35);
+			x ^= (x << 4);
+			values[i] = (x >>> 40) * FLOAT_UNIT;
+		}
+		seed = x;
 	}
 	
 	long getNextPositiveRandom(){
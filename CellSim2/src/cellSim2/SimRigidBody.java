@@ -28,7 +28,9 @@ import com.bulletphysics.linearmath.MotionState;
  */
 public class SimRigidBody extends RigidBody {
 
+	private static int body_ids = 0;
 	private SimObject parent;
+	private int bodyId;
 	/**
 	 * @param constructionInfo
 	 * @param parent
@@ -36,6 +38,7 @@ public class SimRigidBody extends RigidBody {
 	public SimRigidBody(RigidBodyConstructionInfo constructionInfo, SimObject p) {
 		super(constructionInfo);
 		parent = p;
+		bodyId = body_ids++;
 		// TODO Auto-generated constructor stub
 	}
 
@@ -48,6 +51,7 @@ public class SimRigidBody extends RigidBody {
 	public SimRigidBody(float mass, MotionState motionState, CollisionShape collisionShape, SimObject p) {
 		super(mass, motionState, collisionShape);
 		parent = p;
+		bodyId = body_ids++;
 	}
 
 	/**
@@ -60,10 +64,16 @@ public class SimRigidBody extends RigidBody {
 	public SimRigidBody(float mass, MotionState motionState, CollisionShape collisionShape, Vector3f localInertia, SimObject p) {
 		super(mass, motionState, collisionShape, localInertia);
 		parent = p;
+		bodyId = body_ids++;
 	}
 	
 	public SimObject getParent(){
 		return parent;
 	}
+	
+	public int getBodyId(){
+		//Unique for every body made in this run, whatever kind of object owns it
+		return bodyId;
+	}
 
 }
@@ -0,0 +1,98 @@
+/**
+	 * Copyright (C) 2016 Terri Applewhite-Grosso and Nancy Griffeth
+	 * Package: cellSim2
+	 * File: TestRunner.java
+	 * Jul 14, 2016
+	 *
+	 *   Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+	 *
+	 *   The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+	 *
+	 *   THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+	 * 
+	 * 
+	 */
+
+
+package cellSim2;
+
+import java.util.Comparator;
+import java.util.PriorityQueue;
+
+/**
+ * @author Terri Applewhite-Grosso
+ *
+ */
+public class SimScheduler {
+	/**
+	 * Runs periodic work at simulation times instead of having every object
+	 * check the clock on every frame. Tasks are kept in a priority queue keyed
+	 * on simulation microseconds. Tasks due at the same time run in the order
+	 * they were scheduled.
+	 */
+	public interface Task{
+		//Does the work and returns the next time the task is due.
+		//A negative return value drops the task
+		public long run(long now);
+	}
+	
+	private static class Entry{
+		long time;
+		long order;
+		Task task;
+	}
+	
+	private PriorityQueue<Entry> queue;
+	private long nextOrder;
+	
+	public SimScheduler(){
+		nextOrder = 0;
+		queue = new PriorityQueue<Entry>(16, new Comparator<Entry>(){
+			public int compare(Entry a, Entry b){
+				if (a.time != b.time){
+					return (a.time < b.time) ? -1 : 1;
+				}
+				return (a.order < b.order) ? -1 : ((a.order == b.order) ? 0 : 1);
+			}
+		});
+	}
+	
+	public void schedule(long time, Task t){
+		Entry e = new Entry();
+		e.time = time;
+		e.order = nextOrder++;
+		e.task = t;
+		queue.add(e);
+	}
+	
+	public void runDue(long now){
+		//Runs every task that is due at or before now
+		while (!queue.isEmpty() && queue.peek().time <= now){
+			Entry e = queue.poll();
+			long next = e.task.run(now);
+			if (next < 0){
+				continue;
+			}
+			//Never run the same task twice in one call
+			e.time = Math.max(next, now + 1);
+			e.order = nextOrder++;
+			queue.add(e);
+		}
+	}
+	
+	public long getNextTime(){
+		//Time the next task is due, or -1 if nothing is scheduled
+		if (queue.isEmpty()){
+			return -1;
+		}
+		return queue.peek().time;
+	}
+	
+	public int size(){
+		return queue.size();
+	}
+	
+	public void clear(){
+		queue.clear();
+	}
+}
@@ -33,7 +33,6 @@ import com.bulletphysics.ContactAddedCallback;
 import com.bulletphysics.demos.opengl.DemoApplication;
 import com.bulletphysics.demos.opengl.IGL;
 import com.bulletphysics.demos.opengl.GLShapeDrawer;
-import com.bulletphysics.dynamics.DiscreteDynamicsWorld;
 import com.bulletphysics.dynamics.RigidBody;
 import com.bulletphysics.dynamics.constraintsolver.ConstraintSolver;
 import com.bulletphysics.dynamics.constraintsolver.SequentialImpulseConstraintSolver;
@@ -52,7 +51,10 @@ import java.nio.ByteBuffer;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Date;
-import java.util.Random;
+import java.util.HashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.LongAdder;
 
 import javax.vecmath.Vector3f;
 
@@ -75,18 +77,30 @@ public class Simulation extends DemoApplication{
 
 	private ImageGenerator imageGen;
 	private boolean render = true, finished = false;
+	private boolean headless = false; //No IGL - run without any rendering calls
 	private SimGenerator simValues;
 	//private long oldTime, currentTime, startTime, clockTime, lastDataOutput, deltaTime;
-	private long realCurrentTime, realDeltaTime, realStartTime, simCurrentTime, simDeltaTime, simStartTime, lastDataOutput;
-	private long lastImageTime;
+	private long realCurrentTime, realDeltaTime, realStartTime, simCurrentTime, simDeltaTime, simStartTime;
+	private boolean imageDue; //set by the scheduler, cleared when the image is written
 	private float averageDeltaTime;
 	private long numFrames;
 	private float meanConstraints;
 	private long randomCalls;
 	//private SimObject[][] processedCollisions;
 	
-	private Random random;
-	private long randomSeed;
+	private SimRandom random;
+	
+	private ForkJoinPool updatePool; //null unless the surface update is run in parallel
+	private CollisionRegistry collisions; //pairs already handled in this time step
+	private SimScheduler scheduler; //periodic work keyed on simulation time
+	private BondHeap bondBreaks; //bonds by the time their sampled lifetime runs out
+	private ObjectArrayList<BondConstraint> bondPool; //broken bonds kept for reuse
+	private ReceptorStore receptorStore; //receptor counts for every surface segment
+	private ProteinModel proteinModel;
+	private HashMap<Long, MeshTemplate> meshTemplates; //cell shapes by detail level and radius
+	private KineticsIntegrator kinetics;
+	private long kineticsInterval; //microseconds between receptor kinetics updates
+	private LongAdder segmentUpdates, skippedSegmentUpdates; //segments due a kinetics update, and those skipped as asleep
 	
 	private BufferedWriter logFile, cellData, wallData, gradientTestFile, constraintFile, segmentData, investigatingData;
 	private ObjectArrayList<BufferedWriter> gradientDataFiles;
@@ -98,6 +112,8 @@ public class Simulation extends DemoApplication{
 	public Simulation(IGL gl, SimGenerator s, long seed) {
 		super(gl);
 		simValues = s;
+		//A simulation made without a gl is run by SimHeadless and never touches OpenGL
+		headless = (gl == null);
 		modelObjects = new ObjectArrayList<SimObject>();
 		constraints = new ObjectArrayList<BondConstraint>();
 		//startTime is the underlying clock time. clockTime - startTime = currentTime
@@ -105,22 +121,71 @@ public class Simulation extends DemoApplication{
 		realCurrentTime = realStartTime;
 		//current time is microseconds since start of simulation
 		realDeltaTime = 0L;
-		lastDataOutput = -1;
 		averageDeltaTime = 0f;
 		numFrames = 0;
 		randomCalls = 0;
 		meanConstraints = 0;
 		investigating = false;
 		
-		simCurrentTime = realStartTime;
+		//Simulation time starts at zero so that runs with the same seed are repeatable
+		simCurrentTime = 0L;
 		simDeltaTime = (long)(1000000f/60) * simValues.speedUp;
 		//Delta time in microseconds
 		//System.out.println("Sim Delta Time: " + simDeltaTime);
-		simStartTime = realCurrentTime;
-		lastImageTime = -1;
+		simStartTime = simCurrentTime;
+		imageDue = false;
 		
 		
-		random = new Random(seed);
+		random = new SimRandom(seed);
+		collisions = new CollisionRegistry();
+		scheduler = new SimScheduler();
+		bondBreaks = new BondHeap();
+		bondPool = new ObjectArrayList<BondConstraint>();
+		receptorStore = new ReceptorStore();
+		proteinModel = simValues.getProteinModel();
+		meshTemplates = new HashMap<Long, MeshTemplate>();
+		switch(simValues.kineticsIntegrator.toLowerCase()){
+			case "exact":
+				kinetics = new ExactIntegrator();
+				break;
+			case "adaptive":
+				kinetics = new AdaptiveEulerIntegrator();
+				break;
+			case "euler":
+				kinetics = new EulerIntegrator();
+				break;
+			default:
+				System.err.println("Unknown kinetics integrator " + simValues.kineticsIntegrator + ". Using euler.");
+				kinetics = new EulerIntegrator();
+		}
+		kineticsInterval = (long)(simValues.kineticsInterval * 1000000);
+		segmentUpdates = new LongAdder();
+		skippedSegmentUpdates = new LongAdder();
+		final long outputInterval = (long)(simValues.secBetweenOutput * 1000000);
+		scheduler.schedule(simCurrentTime, new SimScheduler.Task(){
+			public long run(long now){
+				outputData();
+				return now + outputInterval;
+			}
+		});
+		if (simValues.generateImages && !headless){
+			//Images are read from the frame buffer by SimLWJGL when timeToOutputImage says so
+			final long imageInterval = simValues.secBetweenImages * 1000000L;
+			scheduler.schedule(simCurrentTime, new SimScheduler.Task(){
+				public long run(long now){
+					imageDue = true;
+					return now + imageInterval;
+				}
+			});
+		}
+		if (simValues.parallelUpdate){
+			if (simValues.updateThreads > 0){
+				updatePool = new ForkJoinPool(simValues.updateThreads);
+			}
+			else{
+				updatePool = new ForkJoinPool();
+			}
+		}
 		gradientDataFiles = new ObjectArrayList<BufferedWriter>();
 		testWidth = 1200;
 				
@@ -193,7 +258,7 @@ public class Simulation extends DemoApplication{
 		SequentialImpulseConstraintSolver sol = new SequentialImpulseConstraintSolver();
 		solver = sol;
 				
-		dynamicsWorld = new DiscreteDynamicsWorld(dispatcher, broadphase, solver, collisionConfiguration);
+		dynamicsWorld = new SimDynamicsWorld(dispatcher, broadphase, solver, collisionConfiguration);
 
 		//Simulation takes place in fluid.  Gravity is set for individual cells
 		dynamicsWorld.setGravity(new Vector3f(0f, 0f, 0f));
@@ -227,11 +292,7 @@ public class Simulation extends DemoApplication{
 	@Override
 	public void clientMoveAndDisplay() {
 		
-		float secSinceOutput = (float)((simCurrentTime - lastDataOutput)/(1.0e6));
-		if (lastDataOutput < 0 || secSinceOutput >= simValues.secBetweenOutput){
-			outputData();
-			lastDataOutput = simCurrentTime;
-		}
+		scheduler.runDue(simCurrentTime);
 		int numObjects = modelObjects.size();
 		/*
 		String time = getFormattedTime();
@@ -254,6 +315,7 @@ public class Simulation extends DemoApplication{
 		numFrames++;
 		
 		simCurrentTime = simCurrentTime + simDeltaTime;
+		advanceGradients();
 		// step the simulation
 		if (dynamicsWorld != null) {
 					float time_step = simDeltaTime / 1000000f; //convert microseconds to seconds
@@ -263,7 +325,9 @@ public class Simulation extends DemoApplication{
 						dynamicsWorld.stepSimulation(1f/60f);
 					}
 					// optional but useful: debug drawing
-					dynamicsWorld.debugDrawWorld();
+					if (!headless){
+						dynamicsWorld.debugDrawWorld();
+					}
 
 				}
 				
@@ -276,38 +340,66 @@ public class Simulation extends DemoApplication{
 					SimRigidBody rbB = (SimRigidBody)contactManifold.getBody1();
 					SimObject objectA = rbA.getParent(), objectB = rbB.getParent();
 					//writeInvestigatingData(i + ": Object A: " + objectA.getType() + objectA.getID() + " Object B: " + objectB.getType() + objectB.getID() + "\n");
-					if (objectA.collidedWith(objectB) | objectB.collidedWith(objectA)){
+					//The mobile object binds to a static one. Otherwise object A binds to object B
+					int kindA = objectA.getKind(), kindB = objectB.getKind();
+					SimObject binder, target;
+					int collID;
+					switch ((kindA & SimObject.STATIC) | ((kindB & SimObject.STATIC) << 1)){
+						case 1:
+							binder = objectB;
+							target = objectA;
+							collID = 1;
+							break;
+						default:
+							binder = objectA;
+							target = objectB;
+							collID = 0;
+							break;
+					}
+					if (!canBind(binder, target)){
+						continue;
+					}
+					if (collisions.addPair(rbA, rbB)){
 						//Only deal with one collision per object pair
 						writeInvestigatingData("Already collided\n");
 						continue;
 					}
 					//writeInvestigatingData(contactManifold.getNumContacts() + " points in manifold\n");
-					int pointIndex = (int)(contactManifold.getNumContacts()*getNextRandomF());
+					//The object whose surface will be bound picks the contact point
+					int pointIndex = (int)(contactManifold.getNumContacts()*binder.getRandom().nextFloat());
 					//writeInvestigatingData("Looking at contact point " + pointIndex+"\n");
 					ManifoldPoint mp = contactManifold.getContactPoint(pointIndex);
-					int idA = mp.index0, idB = mp.index1;
-					if (objectA.getType().equals("Wall") && !objectB.getType().equals("Wall")){
-						objectB.collided(objectA,  mp, 1);
-					}
-					else if (objectB.getType().equals("Wall") && !objectA.getType().equals("Wall")){
-						objectA.collided(objectB,  mp, 0);
-					}
-					else{
-						objectA.collided(objectB, mp, 0);
-					}
+					binder.collided(target, mp, collID);
 				}//end for i
 
 		
 		boolean mobileObjs = false;
 		//Vector3f testVec = new Vector3f();
-		for (int i = 0; i < numObjects; i++){
-			SimObject bioObj = modelObjects.getQuick(i);
-			bioObj.updateObject();
-			bioObj.clearCollisions();
-			if (bioObj.isMobile()){
-				mobileObjs = true;
+		if (updatePool != null){
+			//Motion writes to the output files, so it stays in order on this thread
+			//Surfaces only touch their own object and are split across the pool
+			for (int i = 0; i < numObjects; i++){
+				modelObjects.getQuick(i).updateMotion();
+			}
+			updatePool.invoke(new SurfaceUpdateTask(0, numObjects));
+			for (int i = 0; i < numObjects; i++){
+				SimObject bioObj = modelObjects.getQuick(i);
+				if (bioObj.isMobile()){
+					mobileObjs = true;
+				}
+			}
+		}
+		else{
+			for (int i = 0; i < numObjects; i++){
+				SimObject bioObj = modelObjects.getQuick(i);
+				bioObj.updateObject();
+				if (bioObj.isMobile()){
+					mobileObjs = true;
+				}
 			}
 		}
+		//A new time step, so no pairs have been handled yet
+		collisions.clear();
 		if (!mobileObjs){
 			finished = true;
 		}
@@ -316,9 +408,21 @@ public class Simulation extends DemoApplication{
 		int numConstraints = constraints.size();
 		//System.out.println("Num constraints " + numConstraints);
 		//int remConstraints = 0;
+		//Break the bonds whose lifetime is over
+		while (bondBreaks.size() > 0 && bondBreaks.peek().getBreakTime() <= simCurrentTime){
+			BondConstraint bc = bondBreaks.poll();
+			bc.rupture(simCurrentTime);
+			if (bc.isActive()){
+				//An aggregated bond with members left
+				bondBreaks.add(bc);
+			}
+		}
 		for (int i = numConstraints-1; i >=0; i--){
 			BondConstraint bc = constraints.getQuick(i);
-			bc.update();
+			if (bc.isActive()){
+				//Only stretched bonds can break early
+				bc.update();
+			}
 			if (!bc.isActive()){
 				removeConstraint(bc);
 				//remConstraints++;
@@ -326,7 +430,9 @@ public class Simulation extends DemoApplication{
 		}
 		//writeInvestigatingData(getFormattedTime() + " Num constraints: " + constraints.size() + "\n");
 		//System.out.println("Removed: " + remConstraints + " constraints.");
-		gl.glClear(GL_COLOR_BUFFER_BIT | GL_DEPTH_BUFFER_BIT);
+		if (!headless){
+			gl.glClear(GL_COLOR_BUFFER_BIT | GL_DEPTH_BUFFER_BIT);
+		}
 
 		averageDeltaTime = (averageDeltaTime * (numFrames-1) + realDeltaTime) / numFrames;
 		meanConstraints = (meanConstraints * (numFrames-1) + numConstraints) / numFrames;
@@ -367,7 +473,7 @@ public class Simulation extends DemoApplication{
 		
 		investigating = false;
 
-		if (simValues.displayImages){
+		if (simValues.displayImages && !headless){
 			renderme();
 			//glFlush();
 			//glutSwapBuffers();
@@ -465,14 +571,20 @@ public class Simulation extends DemoApplication{
 		//This method adds an object to the simulation
 		modelObjects.add(obj);
 		dynamicsWorld.addRigidBody(obj.getRigidBody());
-		if (obj.getType().equals("Cell")){
+		int kind = obj.getKind();
+		if ((kind & SimObject.MOBILE) != 0){
 			obj.setOutputFile(cellData);
 		}
-		else if(obj.getType().equals("Wall")){
+		else if((kind & SimObject.STATIC) != 0){
 			obj.setOutputFile(wallData);
 		}
 	}
 	
+	private static boolean canBind(SimObject binder, SimObject target){
+		//Only the binder's receptors are tried, so it needs receptors and the target needs something to bind
+		return (binder.getKind() & SimObject.HAS_RECEPTORS) != 0 && (target.getKind() & SimObject.HAS_LIGAND_COATING) != 0;
+	}
+	
 	public void removeSimulationObject(SimObject obj){
 		//Ugh!  How do I do this?
 		dynamicsWorld.removeRigidBody(obj.getRigidBody());
@@ -481,7 +593,9 @@ public class Simulation extends DemoApplication{
 	
 	public void addConstraint(BondConstraint c){
 		dynamicsWorld.addConstraint(c);
+		c.storeIndex = constraints.size();
 		constraints.add(c);
+		bondBreaks.add(c);
 	}
 	
 	public boolean constraintAvailable(){
@@ -490,16 +604,98 @@ public class Simulation extends DemoApplication{
 	}
 	
 	public void removeConstraint(BondConstraint c){
+		writeBondOutput(c.getOutput());
+		
+		dynamicsWorld.removeConstraint(c);
+		//Move the last bond into this one's place
+		int index = c.storeIndex;
+		int last = constraints.size() - 1;
+		BondConstraint moved = constraints.getQuick(last);
+		constraints.setQuick(index, moved);
+		moved.storeIndex = index;
+		constraints.removeQuick(last);
+		c.storeIndex = -1;
+		bondBreaks.remove(c);
+		c.destroy();
+		c.release();
+		if (bondPool.size() < MAX_CONSTRAINTS){
+			bondPool.add(c);
+		}
+	}
+	
+	public void writeBondOutput(String s){
 		try{
-			constraintFile.write(c.getOutput());
+			constraintFile.write(s);
 		}
 		catch(IOException e){
 			System.err.println("Could not write to bond constraint file");
 		}
-		
-		dynamicsWorld.removeConstraint(c);
-		constraints.remove(c);
-		c.destroy();
+	}
+	
+	void rescheduleBond(BondConstraint c){
+		//The bond's earliest break time has changed
+		bondBreaks.remove(c);
+		bondBreaks.add(c);
+	}
+	
+	public boolean isAggregatingBonds(){
+		return simValues.aggregateBonds;
+	}
+	
+	public boolean isDepletingLigand(){
+		return simValues.ligandDepletion;
+	}
+	
+	public boolean isBindingStochastic(){
+		return simValues.stochasticBinding;
+	}
+	
+	public float getSegmentSleepTolerance(){
+		return simValues.segmentSleepTolerance;
+	}
+	
+	public long getSegmentMaxSleepMicroseconds(){
+		return (long)(simValues.segmentMaxSleep * 1000000);
+	}
+	
+	void countSegmentUpdates(int updates, int skipped){
+		segmentUpdates.add(updates);
+		skippedSegmentUpdates.add(skipped);
+	}
+	
+	public ReceptorStore getReceptorStore(){
+		return receptorStore;
+	}
+	
+	public synchronized MeshTemplate getMeshTemplate(int detailLevel, float radius){
+		//Cells of the same detail level and radius share one shape
+		//The cache is kept here, like the ReceptorStore, only so that it goes away with the simulation.
+		//It is not needed for thread safety - TestRunner starts a new JVM for each run
+		Long key = MeshTemplate.getKey(detailLevel, radius);
+		MeshTemplate template = meshTemplates.get(key);
+		if (template == null){
+			template = new MeshTemplate(detailLevel, radius);
+			meshTemplates.put(key, template);
+		}
+		return template;
+	}
+	
+	public KineticsIntegrator getKineticsIntegrator(){
+		return kinetics;
+	}
+	
+	public long getKineticsIntervalMicroseconds(){
+		return kineticsInterval;
+	}
+	
+	BondConstraint takePooledBond(){
+		int last = bondPool.size() - 1;
+		if (last < 0){
+			return null;
+		}
+		BondConstraint bc = bondPool.getQuick(last);
+		bondPool.removeQuick(last);
+		return bc;
 	}
 	
 	private void outputData(){
@@ -567,10 +763,11 @@ public class Simulation extends DemoApplication{
 	}
 	
 	public Protein getProtein(int id){
-		if (id < simValues.proteins.size()){
-			return simValues.proteins.get(id);
-		}
-		return null;
+		return proteinModel.getProtein(id);
+	}
+	
+	public ProteinModel getProteinModel(){
+		return proteinModel;
 	}
 	
 	public int getProteinId(String name){
@@ -589,15 +786,7 @@ public class Simulation extends DemoApplication{
 	}
 	
 	public Gradient getGradient(int pro){
-		ArrayList<Gradient> grads = getGradients();
-		int numGrads = grads.size();
-		for (int i = 0; i < numGrads; i++){
-			Gradient g = grads.get(i);
-			if (g.getProtein() == pro){
-				return g;
-			}
-		}
-		return null;
+		return proteinModel.getGradient(pro);
 	}
 	
 	public float getDistanceFromSource(){
@@ -630,7 +819,11 @@ public class Simulation extends DemoApplication{
 	}
 	
 	public String getFormattedTime(){
-		long millisec = simCurrentTime / 1000;
+		return getFormattedTime(simCurrentTime);
+	}
+	
+	public String getFormattedTime(long microsec){
+		long millisec = microsec / 1000;
 		long mil = millisec % 1000;
 		long sec = (millisec / 1000) % 60;
 		long min = (millisec / (1000 * 60)) % 60;
@@ -640,10 +833,21 @@ public class Simulation extends DemoApplication{
 	}
 	
 	public float getNextRandomF(){
+		//Only for set up and other work done in order on the main thread
+		//Objects draw from their own streams - see getRandomStream
 		randomCalls++;
 		return random.nextFloat();
 	}
 	
+	public SimRandom getRandomStream(int kind, long id){
+		return random.getStream(kind, id);
+	}
+	
+	public SimRandom getRandomStream(int kind, long id, SimRandom reuse){
+		//Reseeds reuse for the new object so that pooled objects don't make new generators
+		return random.getStream(kind, id, reuse);
+	}
+	
 	public boolean isInvestigating(){
 		return investigating;
 	}
@@ -659,14 +863,26 @@ public class Simulation extends DemoApplication{
 	public ByteBuffer getImageBuffer(int width, int height){
 		return imageGen.getBuffer(width, height);
 	}
+	public boolean isHeadless(){
+		return headless;
+	}
+	
+	public long getNumFrames(){
+		return numFrames;
+	}
+	
 	public boolean timeToOutputImage(){
-		long timeSinceLastImage = (simCurrentTime - lastImageTime)/1000000;
-		return (simValues.generateImages && (lastImageTime < 0 || timeSinceLastImage > simValues.secBetweenImages) );
+		//Never set when headless - there is no frame buffer to read images from
+		return imageDue;
 	}
 	
 	public void outputImage(){
 		imageGen.makeImage(getFormattedTime());
-		lastImageTime = simCurrentTime;
+		imageDue = false;
+	}
+	
+	public SimScheduler getScheduler(){
+		return scheduler;
 	}
 	
 	public void writeInvestigatingData(String s){
@@ -697,6 +913,10 @@ public class Simulation extends DemoApplication{
 	
 	
 	public void wrapUp(){
+		if (updatePool != null){
+			updatePool.shutdown();
+		}
+		scheduler.clear();
 		writeToLog("\n" + getFormattedTime() + "\tFinishing Up");
 		writeToLog("Current sim time (microseconds)\t" + simCurrentTime);
 		writeToLog("Simulation time in minutes\t" + String.format("%.3f", simCurrentTime/1000000f/60f));
@@ -708,6 +928,22 @@ public class Simulation extends DemoApplication{
 		writeToLog("Mean frames per second\t" + (int)(1000000.0 * (float)numFrames/realCurrentTime));
 		//writeToLog("currentTime frames Per second\t" + (int)(1000000.0/((float)realCurrentTime/numFrames)));
 		writeToLog("Mean number of constraints per frame\t" + meanConstraints);
+		writeToLog("Receptor kinetics\t" + kinetics.getName() + "\tinterval (microseconds)\t" + kineticsInterval);
+		if (simValues.segmentSleepTolerance > 0){
+			long skipped = skippedSegmentUpdates.sum(), updates = segmentUpdates.sum();
+			writeToLog("Sleeping segment updates skipped\t" + skipped + "\tof\t" + updates + "\t" + String.format("%.3f", (updates > 0) ? (double)skipped / updates : 0.0));
+		}
+		for (int i = 0; i < simValues.gradients.size(); i++){
+			Gradient g = simValues.gradients.get(i);
+			if (g instanceof FileGradient){
+				FileGradient fg = (FileGradient)g;
+				writeToLog("Gradient " + getProteinName(g.getProtein()) + " cache hits\t" + fg.getCacheHits() + "\tmisses\t" + fg.getCacheMisses());
+			}
+			if (g instanceof DiffusionGradient && simValues.ligandDepletion){
+				DiffusionGradient dg = (DiffusionGradient)g;
+				writeToLog("Gradient " + getProteinName(g.getProtein()) + " molecules taken up\t" + dg.getDepleted() + "\tbound beyond what the medium held\t" + dg.getOverdrawn());
+			}
+		}
 		//writeToLog("Number of calls to random\t" + randomCalls);
 		int numObjects = modelObjects.size();
 		for (int i = 0; i < numObjects; i++){
@@ -771,29 +1007,66 @@ public class Simulation extends DemoApplication{
 		}
 	}
 	
+	private void advanceGradients(){
+		//Gradients that are solved as we go catch up to the new time before anything reads them
+		for (int i = 0; i < simValues.gradients.size(); i++){
+			Gradient g = simValues.gradients.get(i);
+			if (g instanceof DiffusionGradient){
+				((DiffusionGradient)g).advance(simCurrentTime, updatePool);
+			}
+		}
+	}
+	
+	private class SurfaceUpdateTask extends RecursiveAction{
+		//Updates the surfaces of the model objects from start up to (not including) end
+		private static final long serialVersionUID = 1L;
+		private static final int MIN_OBJECTS = 8;
+		private int start, end;
+		
+		public SurfaceUpdateTask(int s, int e){
+			start = s;
+			end = e;
+		}
+		
+		@Override
+		protected void compute(){
+			if (end - start <= MIN_OBJECTS){
+				for (int i = start; i < end; i++){
+					modelObjects.getQuick(i).updateSurface();
+				}
+				return;
+			}
+			int middle = (start + end) / 2;
+			invokeAll(new SurfaceUpdateTask(start, middle), new SurfaceUpdateTask(middle, end));
+		}
+	}
+	
 	private class SimContactAddedCallback extends ContactAddedCallback{
 		
 		public boolean contactAdded(ManifoldPoint cp, CollisionObject colObj0, int partId0, int index0, CollisionObject colObj1, int partId1, int index1){
 			SimRigidBody b0 = (SimRigidBody)colObj0, b1 = (SimRigidBody)colObj1;
 			SimObject s0 = b0.getParent(), s1 = b1.getParent();
-			if (s0.collidedWith(s1) | s1.collidedWith(s0)){
-				//The OR deliberately does NOT short circuit. It adds the other object of pair to both objects
+			SimObject binder = s0, target = s1;
+			int collID = 0;
+			switch ((s0.getKind() & SimObject.STATIC) | ((s1.getKind() & SimObject.STATIC) << 1)){
+				case 1:
+					//s0 is static
+					binder = s1;
+					target = s0;
+					collID = 1;
+					break;
+				default:
+					break;
+			}
+			if (!canBind(binder, target)){
+				return false;
+			}
+			if (collisions.addPair(b0, b1)){
 				//Only deal with new contacts if they haven't been dealt with in this time step
 				return false;
 			}
 			//System.out.println("\nContact added: positionWorldOnA" + cp.positionWorldOnA + " positionWorldOnB" + cp.positionWorldOnB);
-			if (b0.getParent().getType().equals("Wall") && !b1.getParent().getType().equals("Wall")){
-				//System.out.println("b0 is wall");
-				b1.getParent().collided(b0.getParent(), cp, 1);
-			}
-			else if (b1.getParent().getType().equals("Wall") && !b0.getParent().getType().equals("Wall")){
-				b0.getParent().collided(b1.getParent(), cp, 0);
-				//System.out.println("b1 is wall");
-			}
-			else{
-				b0.getParent().collided(b1.getParent(), cp, 0);
-				//System.out.println("Neither is wall");
-			}
+			binder.collided(target, cp, collID);
 			
 			return true;
 		}
@@ -31,10 +31,10 @@ public class SurfaceSegment {
 
 	private SimObject parent;
 	private int myId;
+	private ReceptorStore store; //holds the receptor counts - see ReceptorStore
 	private int[] receptorIds;
-	private float[] unboundReceptors;
-	private float[] boundReceptors;
-	private float[] maxReceptors;
+	private int[] slots; //where each receptor's counts are in the store
+	private int[] indexByProtein; //position of each protein in receptorIds, by protein id, or -1
 	private int[] molsPerBond;
 	//private HashMap<Integer, TraffickingInfo> traffickingRates;
 	private int visibleReceptor = -1;
@@ -42,45 +42,64 @@ public class SurfaceSegment {
 	private Vector3f worldCenter;
 	private int mins;
 	private long overall;
+	private BondConstraint[] joints; //aggregated bonds from this segment - see Simulation.isAggregatingBonds
+	private int numJoints;
+	private boolean disturbed; //touched since the owner last checked - see SegmentedCell sleeping segments
 	
-	public SurfaceSegment(SimObject p, int id) {
+	public SurfaceSegment(SimObject p, int id, ReceptorStore rs) {
 		parent = p;
 		myId = id;
+		store = rs;
 		receptorIds = new int[0];
-		unboundReceptors = new float[0];
-		boundReceptors = new float[0];
-		maxReceptors = new float[0];
+		slots = new int[0];
+		indexByProtein = new int[0];
 		molsPerBond = new int[0];
 		//traffickingRates = new HashMap<Integer, TraffickingInfo>();
 		lastConcentration = 0;
 		worldCenter = new Vector3f();
 		mins = 0;
 		overall = 0;
+		joints = null;
+		numJoints = 0;
+		disturbed = false;
 	}
 	
 	public void addReceptor(int proId, float unbound, int mpb){
+		//Give a new receptor its own slot in the store
+		int index = getProteinIndex(proId);
+		if (index >= 0){
+			//This protein is already on this segment. Just add on
+			store.addReceptors(slots[index], unbound);
+			return;
+		}
+		addReceptor(proId, unbound, mpb, store.allocate(1));
+	}
+	
+	public void addReceptor(int proId, float unbound, int mpb, int slot){
+		//The owner has already set aside the slot for this receptor
 		//System.out.println("SS 52: adding receptor");
 		int index = getProteinIndex(proId);
 		if (index >= 0){
 			//This protein is already on this segment. Just add on
-			unboundReceptors[index] += unbound;
-			maxReceptors[index] += unbound;
+			store.addReceptors(slots[index], unbound);
 			return;
 		}
 		int[] newids = Arrays.copyOf(receptorIds, receptorIds.length+1);
-		float[] newUnbound = Arrays.copyOf(unboundReceptors, receptorIds.length+1);
-		float[] newBound = Arrays.copyOf(boundReceptors, receptorIds.length+1);
-		float[] newMax = Arrays.copyOf(maxReceptors, receptorIds.length+1);
+		int[] newSlots = Arrays.copyOf(slots, receptorIds.length+1);
 		int[] newMPB = Arrays.copyOf(molsPerBond, receptorIds.length+1);
 		newids[receptorIds.length] = proId;
-		newUnbound[receptorIds.length] = unbound;
-		newBound[receptorIds.length] = 0;
-		newMax[receptorIds.length] = unbound;
+		newSlots[receptorIds.length] = slot;
 		newMPB[receptorIds.length] = mpb;
+		if (proId >= indexByProtein.length){
+			int oldLength = indexByProtein.length;
+			indexByProtein = Arrays.copyOf(indexByProtein, proId + 1);
+			Arrays.fill(indexByProtein, oldLength, proId + 1, -1);
+		}
+		indexByProtein[proId] = receptorIds.length;
+		store.addReceptors(slot, unbound);
+		disturbed = true;
 		receptorIds = newids;
-		unboundReceptors = newUnbound;
-		boundReceptors = newBound;
-		maxReceptors = newMax;
+		slots = newSlots;
 		molsPerBond = newMPB;
 		if (receptorIds.length == 1){
 			visibleReceptor = 0;
@@ -89,8 +108,6 @@ public class SurfaceSegment {
 		//	System.out.println("SS 76: Initial unbound = " + unbound);
 		//}
 		//System.out.println("SS 75 Visible receptor: " + visibleReceptor);
-		//System.out.println("unbound receptor: " + unboundReceptors[visibleReceptor]);
-		//System.out.println("bound receptor: " + boundReceptors[visibleReceptor]);
 		//System.out.println("receptor id: " + receptorIds[visibleReceptor]);
 	}
 	
@@ -124,72 +141,67 @@ public class SurfaceSegment {
 	//}
 	
 	public float getNumMolecules(int proID, float portion, boolean bound){
-		for (int i = 0; i < receptorIds.length; i++){
-			if (proID == receptorIds[i]){
-				if (bound){
-					return boundReceptors[i] * portion;
-				}
-				else{
-					return unboundReceptors[i] * portion;
-				}
-			}
+		int i = getProteinIndex(proID);
+		if (i < 0){
+			//protein not found!
+			return -1;
+		}
+		if (bound){
+			return store.getBound(slots[i]) * portion;
 		}
-		//protein not found!
-		return -1;
+		return store.getUnbound(slots[i]) * portion;
 	}
 	
 	public float getProteinPortion(int proID, boolean bound){
-		for (int i = 0; i < receptorIds.length; i++){
-			if (proID == receptorIds[i]){
-				if (bound){
-					return boundReceptors[i] / maxReceptors[i];
-				}
-				else{
-					return unboundReceptors[i] / maxReceptors[i];
-				}
-			}
+		int i = getProteinIndex(proID);
+		if (i < 0){
+			//protein not found!
+			return -1;
+		}
+		if (bound){
+			return store.getBound(slots[i]) / store.getMax(slots[i]);
 		}
-		//protein not found!
-		return -1;
+		return store.getUnbound(slots[i]) / store.getMax(slots[i]);
 	}
 	
 	public int getMoleculesPerBond(int proID){
-		for (int i = 0; i < receptorIds.length; i++){
-			if (proID == receptorIds[i]){
-				return molsPerBond[i];
-			}
+		int i = getProteinIndex(proID);
+		if (i < 0){
+			//protein not found!
+			return -1;
 		}
-		//protein not found!
-		return -1;
+		return molsPerBond[i];
 	}
 	
-  	public int getProteinIndex(int proID){
-		for (int i = 0; i < receptorIds.length; i++){
-			if (receptorIds[i] == proID){
-				return i;
-			}
+	public int getProteinIndex(int proID){
+		if (proID < 0 || proID >= indexByProtein.length){
+			return -1;
 		}
-		return -1;
+		return indexByProtein[proID];
 	}
 	
 	public void update(long now, float deltaMicroSecs, Vector3f wC){
+		update(now, deltaMicroSecs, wC, null, null);
+	}
+	
+	public void update(long now, float deltaMicroSecs, Vector3f wC, float[][] concentrations, float[][] uptake){
 		//Update all of the proteins on this segment
+		//concentrations[ligand][myId], if given, holds the ligand concentrations already sampled for this segment
+		//uptake[ligand][myId], if given, gets the ligand molecules taken from the medium by binding
 		//System.out.println("SS 152: Updating proteins");
-		TraffickingInfo tf = new TraffickingInfo();
 		worldCenter = wC;
+		float[] unboundReceptors = store.getUnbound();
+		float[] boundReceptors = store.getBound();
 		
 		for (int i = 0; i < receptorIds.length; i++){
-			Integer key = new Integer(receptorIds[i]);
+			int slot = slots[i];
 			Protein pro = parent.getProtein(receptorIds[i]);
 			//System.out.println("SS 162 protein: " + pro.getName());
-			tf = parent.getTraffickInfo(receptorIds[i], myId);
-			//System.out.println("SS 163 Getting parent tf");
-			//System.out.println("SS 178 receptorId " + i + " tf: " + tf.toString());
-			if (tf.isBlank()){
+			if (store.isBlank(slot)){
 				//Reduce using half life
 				//System.out.println("SS 172: tf is Blank");
 				float minutes = deltaMicroSecs / 1000000f / 60;
-				unboundReceptors[i] = unboundReceptors[i]*(float)Math.pow(.5, minutes/pro.getHalfLife());
+				unboundReceptors[slot] = unboundReceptors[slot]*(float)Math.pow(.5, minutes/pro.getHalfLife());
 				return;
 			}
 			/*
@@ -207,18 +219,24 @@ public class SurfaceSegment {
 			int[] ligands = pro.getLigands();
 			//System.out.println("SS 179: ligands length: "+ ligands.length);
 			for (int k = 0; k < ligands.length; k++){
-				Gradient g = parent.getGradient(ligands[k]);
 				float ligandConc = 0;
-				if (g!= null){
-					//TODO Only works if a single ligand!
-					ligandConc = g.getConcentration(now, worldCenter);	
+				if (concentrations != null && ligands[k] < concentrations.length && concentrations[ligands[k]] != null){
+					ligandConc = concentrations[ligands[k]][myId];
 					lastConcentration = ligandConc;
-				} 
+				}
+				else{
+					Gradient g = parent.getGradient(ligands[k]);
+					if (g!= null){
+					//TODO Only works if a single ligand!
+						ligandConc = g.getConcentration(now, worldCenter);	
+						lastConcentration = ligandConc;
+					}
+				}
 				float kon = pro.getBindingRate(k);
 				float koff = pro.getReverseRate(k);
-				float qr = tf.getSecretionRate();
-				float kt = tf.getUnboundIntRate();
-				float ke = tf.getBoundIntRate();
+				float qr = store.getSecretionRates()[slot];
+				float kt = store.getUnboundIntRates()[slot];
+				float ke = store.getBoundIntRates()[slot];
 				/*
 				if (myId == 0){
 					System.out.println("SS 212: ");
@@ -231,22 +249,25 @@ public class SurfaceSegment {
 				}*/
 				
 				
-				float deltaR = deltaMicroSecs * ((-kon*unboundReceptors[i]*ligandConc)+(koff * boundReceptors[i])-(kt*unboundReceptors[i])+qr);
-				float deltaC = deltaMicroSecs * ((kon*unboundReceptors[i]*ligandConc) - (koff * boundReceptors[i]) - (ke * boundReceptors[i]));
-				unboundReceptors[i] += deltaR;
-				boundReceptors[i] += deltaC;
-				//System.out.println("SS 196: unbound: " + unboundReceptors[i] + " boundReceptors: " + boundReceptors[i] + " deltaR: " + deltaR + " deltaC: " + deltaC);
-				if (unboundReceptors[i] < 0){
-					unboundReceptors[i] = 0;
+				if (uptake != null && ligands[k] < uptake.length && uptake[ligands[k]] != null){
+					uptake[ligands[k]][myId] += deltaMicroSecs * ((kon*unboundReceptors[slot]*ligandConc) - (koff * boundReceptors[slot]));
+				}
+				float deltaR = deltaMicroSecs * ((-kon*unboundReceptors[slot]*ligandConc)+(koff * boundReceptors[slot])-(kt*unboundReceptors[slot])+qr);
+				float deltaC = deltaMicroSecs * ((kon*unboundReceptors[slot]*ligandConc) - (koff * boundReceptors[slot]) - (ke * boundReceptors[slot]));
+				unboundReceptors[slot] += deltaR;
+				boundReceptors[slot] += deltaC;
+				//System.out.println("SS 196: unbound: " + unboundReceptors[slot] + " boundReceptors: " + boundReceptors[slot] + " deltaR: " + deltaR + " deltaC: " + deltaC);
+				if (unboundReceptors[slot] < 0){
+					unboundReceptors[slot] = 0;
 				}
-				if (boundReceptors[i] < 0){
-					boundReceptors[i] = 0;
+				if (boundReceptors[slot] < 0){
+					boundReceptors[slot] = 0;
 				}
 				overall += deltaMicroSecs;
 				int newMinutes = (int)(overall/6e7);
 				if (newMinutes > mins && parent.getID()==0){
 					mins = newMinutes;
-					//System.out.println("SS 241 - " + mins + ": R" + unboundReceptors[i] + " C " + boundReceptors[i]);
+					//System.out.println("SS 241 - " + mins + ": R" + unboundReceptors[slot] + " C " + boundReceptors[slot]);
 				}
 			}
 
@@ -255,21 +276,50 @@ public class SurfaceSegment {
 	
 	public void makeBond(int proId, float numMolecules){
 		//Remove molecules from unbound and add to bound
-		for (int i = 0; i < receptorIds.length; i++){
-			if (receptorIds[i] == proId){
-				unboundReceptors[i] -= numMolecules;
-				boundReceptors[i] += numMolecules;
-				return;
-			}
+		int i = getProteinIndex(proId);
+		if (i >= 0){
+			store.bind(slots[i], numMolecules);
+			disturbed = true;
 		}
 	}
 	
 	public void removeBond(int proId, float numMolecules){
 		//Remove molecules from bound and add to unbound
-		for (int i = 0; i < receptorIds.length; i++){
-			if (receptorIds[i] == proId){
-				unboundReceptors[i] += numMolecules;
-				boundReceptors[i] -= numMolecules;
+		int i = getProteinIndex(proId);
+		if (i >= 0){
+			store.bind(slots[i], -numMolecules);
+			disturbed = true;
+		}
+	}
+	
+	public BondConstraint findJoint(SurfaceSegment other, int pro, int otherPro){
+		//Returns the aggregated bond from this segment to the other for these proteins, or null
+		for (int i = 0; i < numJoints; i++){
+			BondConstraint bc = joints[i];
+			if (bc.surfB == other && bc.proteinA == pro && bc.proteinB == otherPro && bc.isActive()){
+				return bc;
+			}
+		}
+		return null;
+	}
+	
+	public void addJoint(BondConstraint bc){
+		if (joints == null){
+			joints = new BondConstraint[4];
+		}
+		if (numJoints == joints.length){
+			joints = Arrays.copyOf(joints, numJoints * 2);
+		}
+		joints[numJoints] = bc;
+		numJoints++;
+	}
+	
+	public void removeJoint(BondConstraint bc){
+		for (int i = 0; i < numJoints; i++){
+			if (joints[i] == bc){
+				numJoints--;
+				joints[i] = joints[numJoints];
+				joints[numJoints] = null;
 				return;
 			}
 		}
@@ -282,13 +332,35 @@ public class SurfaceSegment {
 		return receptorIds;
 	}
 	
+	public void setWorldCenter(Vector3f wC){
+		//For owners that update their segments' receptors themselves
+		worldCenter = wC;
+	}
+	
+	public void setLastConcentration(float c){
+		lastConcentration = c;
+	}
+	
+	public void disturb(){
+		disturbed = true;
+	}
+	
+	public boolean takeDisturbed(){
+		//Returns whether the segment was touched since the last call
+		boolean d = disturbed;
+		disturbed = false;
+		return d;
+	}
+	
 	public String getOutput(Simulation sim){
 		String s = "";
 		for (int i = 0; i < receptorIds.length; i++){
 			//System.out.println("SS 280 Bound receptors: " + boundReceptors[i]);
-			if (boundReceptors[i] > 0 || unboundReceptors[i] > 0){
+			float unbound = store.getUnbound(slots[i]);
+			float bound = store.getBound(slots[i]);
+			if (bound > 0 || unbound > 0){
 				s += sim.getFormattedTime() + "\t" + getParent().getType() + "-" + getParent().getID() + "\t" + myId + "\t";
-				s += sim.getProteinName(receptorIds[i]) + "\t" + unboundReceptors[i] + "\t" + boundReceptors[i];
+				s += sim.getProteinName(receptorIds[i]) + "\t" + unbound + "\t" + bound;
 				s += "\t" + lastConcentration + "\t" + worldCenter.x;
 				s += "\n";
 			}
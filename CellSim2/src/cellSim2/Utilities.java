@@ -11,6 +11,45 @@ public class Utilities {
 	private Utilities() {
 	}
 	
+	private static class BondScratch{
+		//Working space for makeBonds so that binding makes no garbage
+		//Walls have four vertices, cell segments have three
+		Transform trans = new Transform();
+		Transform localA = new Transform(), localB = new Transform();
+		Vector3f recNormal = new Vector3f(), ligNormal = new Vector3f();
+		Vector3f[] recWorldVertices = makeVertices(), ligWorldVertices = makeVertices();
+		Vector3f recOrigin = new Vector3f(), ligOrigin = new Vector3f();
+		Vector3f T1 = new Vector3f(), T2 = new Vector3f();
+		Vector3f randVec = new Vector3f(), w = new Vector3f(), intersection = new Vector3f();
+		float[] draws = new float[64];
+		
+		private static Vector3f[] makeVertices(){
+			Vector3f[] v = new Vector3f[4];
+			for (int i = 0; i < 4; i++){
+				v[i] = new Vector3f();
+			}
+			return v;
+		}
+		
+		float[] getDraws(int n){
+			if (draws.length < n){
+				draws = new float[Math.max(n, draws.length * 2)];
+			}
+			return draws;
+		}
+	}
+	
+	//How many bonds to attempt when binding is stochastic - see sampleBonds
+	static final float DETERMINISTIC_BONDS = 100;
+	static final float EXACT_BONDS = 50;
+	static final float LEAP_FRACTION = .1f;
+	
+	private static final ThreadLocal<BondScratch> scratch = new ThreadLocal<BondScratch>(){
+		protected BondScratch initialValue(){
+			return new BondScratch();
+		}
+	};
+	
 	public static int makeBonds(Simulation s, int rec, int lig, SurfaceSegment recSurface, SurfaceSegment ligSurface){
 		Protein receptor = s.getProtein(rec);
 		int ligandIndex = receptor.proteinIndex(lig);
@@ -22,10 +61,12 @@ public class Utilities {
 		int ligSurfaceId = ligSurface.getID();
 		
 		
+		BondScratch sc = scratch.get();
 		//If the bonds (which project along the normal to recSurface)
 		//are parallel to ligSurface, we can't make bonds here.
-		Vector3f recNormal = recSurface.getParent().getSegmentWorldNormal(recSurfaceId);
-		Vector3f ligNormal = ligSurface.getParent().getSegmentWorldNormal(ligSurfaceId);
+		Vector3f recNormal = sc.recNormal, ligNormal = sc.ligNormal;
+		recSurface.getParent().getSegmentWorldNormal(recSurfaceId, sc.trans, recNormal);
+		ligSurface.getParent().getSegmentWorldNormal(ligSurfaceId, sc.trans, ligNormal);
 		//s.writeInvestigatingData("ligSurfaceId " + ligSurfaceId + " ligNormal: " + ligNormal + "\n");
 		//s.writeInvestigatingData("recSurfaceId " + recSurfaceId + " recNormal: " + recNormal + "\n");
 		float normalsDot = recNormal.dot(ligNormal);
@@ -70,33 +111,50 @@ public class Utilities {
 		float maxBonds = (time * bindingRate * numUnboundReceptors * ligandConc/molsPerBond);
 		//s.writeInvestigatingData(recSurfaceId + ":  Maximum Bonds: " + maxBonds + "\n");
 		
-		//TODO If the number is under some kind of minimum, use the Gillespie algorithm
+		//Random values come from the receptor object's stream
+		SimRandom random = recSurface.getParent().getRandom();
+		int attempts;
+		if (s.isBindingStochastic()){
+			int bondMolecules = Math.max(molsPerBond, ligSurface.getMoleculesPerBond(lig));
+			attempts = sampleBonds(maxBonds, numUnboundReceptors, numLigands, bondMolecules, random);
+		}
+		else{
+			attempts = Math.max((int)(maxBonds), 0);
+		}
 		
 		//Now that we know how many bonds to attempt, let's attempt them
-		Vector3f[] recWorldVertices = recSurface.getParent().getWorldCoordinates(recSurfaceId);
-		Vector3f[] ligWorldVertices = ligSurface.getParent().getWorldCoordinates(ligSurfaceId);
-		Vector3f recOrigin = new Vector3f(), ligOrigin = new Vector3f();
+		Vector3f[] recWorldVertices = sc.recWorldVertices, ligWorldVertices = sc.ligWorldVertices;
+		recSurface.getParent().getWorldCoordinates(recSurfaceId, sc.trans, recWorldVertices);
+		ligSurface.getParent().getWorldCoordinates(ligSurfaceId, sc.trans, ligWorldVertices);
+		Vector3f recOrigin = sc.recOrigin, ligOrigin = sc.ligOrigin;
 		recSurface.getParent().getRigidBody().getCenterOfMassPosition(recOrigin);
 		ligSurface.getParent().getRigidBody().getCenterOfMassPosition(ligOrigin);
 		
 		
+		//Draw all of the random values for the attempts at once
+		float[] draws = sc.getDraws(2 * attempts);
+		random.nextFloats(draws, 0, 2 * attempts);
+		Vector3f T1 = sc.T1, T2 = sc.T2;
+		Vector3f randVec = sc.randVec, w = sc.w, intersection = sc.intersection;
+		Transform localA = sc.localA, localB = sc.localB;
+		
 		int countBonds = 0;
-		for (int i = 0; i < (int)(maxBonds); i++){
+		for (int i = 0; i < attempts; i++){
 			//Find a random point on the receptor surface
 			//adamswaab.wordpress.com/2009/12/11/random-point-in-a-triangle-barycentric-coordinates/
 			//Get two vectors on the triangle
-			Vector3f T1 = new Vector3f(recWorldVertices[1]);//AB
+			T1.set(recWorldVertices[1]);//AB
 			T1.sub(recWorldVertices[0]);
-			Vector3f T2 = new Vector3f(recWorldVertices[2]);//AC
+			T2.set(recWorldVertices[2]);//AC
 			T2.sub(recWorldVertices[0]);
 			//System.out.println("initial 0: " + recWorldVertices[0] + " initial 1: " + recWorldVertices[1] + " initial 2: " + recWorldVertices[2]);
 			//System.out.println("T1 :" + T1 + " T2: " + T2);
 			
 			//Get two random values
-			float r = s.getNextRandomF();
-			float t = s.getNextRandomF();
+			float r = draws[2 * i];
+			float t = draws[2 * i + 1];
 			while(r==t){ //make sure they are different
-				r = s.getNextRandomF();
+				r = random.nextFloat();
 			}
 			if (r + t >= 1){
 				r = 1 - r;
@@ -105,16 +163,16 @@ public class Utilities {
 			T1.scale(r);
 			T2.scale(t);
 			//System.out.println("r: " + r + " s: " + s + "T1 :" + T1 + " T2: " + T2);
-			Vector3f randVec = new Vector3f(recWorldVertices[0]);
+			randVec.set(recWorldVertices[0]);
 			randVec.add(T1);
 			randVec.add(T2);
 			//System.out.println("Random Triangle Point: " + randVec);
 			
 			//using these algorithm: http://geomalgorithms.com/a05-_intersect-1.html
-			Vector3f w = new Vector3f(randVec);
+			w.set(randVec);
 			w.sub(ligWorldVertices[0]);
 			float s1 = -ligNormal.dot(w)/normalsDot;
-			Vector3f intersection = new Vector3f(recNormal);
+			intersection.set(recNormal);
 			intersection.scale(s1);
 			intersection.add(randVec);
 			//s.writeInvestigatingData("ligNorm: " + ligNormal + " ligWorldVertices[0] " + ligWorldVertices[0] + "\n");
@@ -125,26 +183,90 @@ public class Utilities {
 			//See if the intersection point is within the bound of the other surface.
 			if (s1 <= bondLength){
 				//System.out.println("Make a bond");
-				Vector3f localRec = new Vector3f(randVec);
-				localRec.sub(recOrigin);
-				//s.writeInvestigatingData("    local point on triangle: " + localRec + "\n");
-				//s.writeInvestigatingData("    intersection: " + intersection + " ligOrigin: " + ligOrigin + "\n");
-				Vector3f localLig = new Vector3f(intersection);
-				localLig.sub(ligOrigin);
-				Transform localA = new Transform(), localB = new Transform();
+				//The frames are copied by the constraint, so they can be reused
 				localA.setIdentity();
 				localB.setIdentity();
-				localA.origin.set(localRec);
-				localB.origin.set(localLig);
-				//s.writeInvestigatingData("   local point on wall: " + localLig + " \n");
+				localA.origin.sub(randVec, recOrigin);
+				//s.writeInvestigatingData("    local point on triangle: " + localA.origin + "\n");
+				//s.writeInvestigatingData("    intersection: " + intersection + " ligOrigin: " + ligOrigin + "\n");
+				localB.origin.sub(intersection, ligOrigin);
+				//s.writeInvestigatingData("   local point on wall: " + localB.origin + " \n");
 				//BondConstraint(Simulation s, float stab, SurfaceSegment ssa, SurfaceSegment ssb, int proa, int prob, RigidBody rbA, RigidBody rbB, Transform frameInA, Transform frameInB, boolean useLinearReferenceFrameA) {
-				BondConstraint bc = new BondConstraint(s, timeToStable, bondLength, recSurface, ligSurface, rec, lig, recSurface.getParent().getRigidBody(), ligSurface.getParent().getRigidBody(), localA, localB, true);
+				if (s.isAggregatingBonds()){
+					//All bonds between these two segments and proteins share one joint
+					BondConstraint joint = recSurface.findJoint(ligSurface, rec, lig);
+					if (joint != null){
+						joint.addMember();
+					}
+					else{
+						joint = BondConstraint.makeBond(s, timeToStable, bondLength, recSurface, ligSurface, rec, lig, recSurface.getParent().getRigidBody(), ligSurface.getParent().getRigidBody(), localA, localB);
+						recSurface.addJoint(joint);
+					}
+				}
+				else{
+					BondConstraint.makeBond(s, timeToStable, bondLength, recSurface, ligSurface, rec, lig, recSurface.getParent().getRigidBody(), ligSurface.getParent().getRigidBody(), localA, localB);
+				}
 				countBonds++;
 			}
 		}
 		//s.writeInvestigatingData(recSurfaceId + "\t" + countBonds + "\n");
 		return countBonds;
 	}
+	
+	static int sampleBonds(float expected, float receptors, float ligands, int molsPerBond, SimRandom random){
+		//Returns a random number of bonds to attempt in one time step, where expected is the mean
+		//Many expected bonds: the mean is used, as without stochastic binding
+		//Few molecules, or a step that would use up many of them: exact simulation of each bond
+		//Otherwise: a tau-leap with a Poisson number of bonds
+		if (!(expected > 0) || molsPerBond <= 0){
+			return 0;
+		}
+		if (expected >= DETERMINISTIC_BONDS){
+			return (int)expected;
+		}
+		float available = Math.min(receptors, ligands) / molsPerBond;
+		if (available < EXACT_BONDS || expected > LEAP_FRACTION * available){
+			return exactBonds(expected, receptors, ligands, molsPerBond, random);
+		}
+		return Math.min(poisson(expected, random), (int)available);
+	}
+	
+	private static int exactBonds(float expected, float receptors, float ligands, int molsPerBond, SimRandom random){
+		//Gillespie's direct method over one time step, with time in steps.
+		//Each bond uses up receptors and ligands, so the rate falls as bonds are made
+		double t = 0;
+		int n = 0;
+		while (true){
+			double r = receptors - (double)n * molsPerBond;
+			double l = ligands - (double)n * molsPerBond;
+			if (r < molsPerBond || l < molsPerBond){
+				return n;
+			}
+			double rate = expected * (r / receptors) * (l / ligands);
+			t -= Math.log(1 - random.nextFloat()) / rate;
+			if (t > 1){
+				return n;
+			}
+			n++;
+		}
+	}
+	
+	static int poisson(float mean, SimRandom random){
+		//Knuth's method, in pieces so that e^-mean does not get too small
+		int k = 0;
+		double left = mean;
+		while (left > 0){
+			double piece = Math.min(left, 20);
+			left -= piece;
+			double limit = Math.exp(-piece);
+			double p = 1 - random.nextFloat();
+			while (p > limit){
+				k++;
+				p *= 1 - random.nextFloat();
+			}
+		}
+		return k;
+	}
 }
 
 
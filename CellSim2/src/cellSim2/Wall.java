@@ -24,7 +24,6 @@ import com.bulletphysics.collision.shapes.CollisionShape;
 import com.bulletphysics.collision.shapes.BoxShape;
 import com.bulletphysics.demos.opengl.IGL;
 import com.bulletphysics.linearmath.Transform;
-import com.bulletphysics.util.ObjectArrayList;
 import com.bulletphysics.linearmath.DefaultMotionState;
 import com.bulletphysics.dynamics.RigidBodyConstructionInfo;
 
@@ -32,6 +31,7 @@ import java.io.BufferedWriter;
 import java.io.IOException;
 import java.nio.FloatBuffer;
 import java.util.Arrays;
+import java.util.BitSet;
 import java.util.HashMap;
 import java.util.HashSet;
 
@@ -52,7 +52,6 @@ public class Wall implements SimObject{
 	protected float[] wallColor = {0.45f, 0.45f, 0.45f, 1f}; //bare wall is very light gray
 	//protected float width, height, depth;
 	protected static FloatBuffer buffer = BufferUtils.createFloatBuffer(16);
-	protected ObjectArrayList<SimObject> collidedObjects;
 
 	protected boolean visible = true;
 	protected float[] glMat = new float[16];
@@ -65,11 +64,13 @@ public class Wall implements SimObject{
 	protected boolean toRemove = false;
 	protected int id;
 	protected Simulation sim;
+	protected SimRandom random;
 	protected boolean bound = false;
 	protected static boolean finalWritten = false;
 	protected SurfaceSegment[] segments;
 	protected HashSet<Integer> surfaceProteins;
 	protected HashSet<Integer> receptorsBindTo;
+	protected BitSet surfaceProteinBits, receptorsBindToBits;
 	
 	protected int visibleProtein = -1;
 	protected float[] visibleColor;
@@ -99,6 +100,8 @@ public class Wall implements SimObject{
 		segments = new SurfaceSegment[0];
 		surfaceProteins = new HashSet<Integer>();
 		receptorsBindTo = new HashSet<Integer>();
+		surfaceProteinBits = new BitSet();
+		receptorsBindToBits = new BitSet();
 		
 		//Set up the start and end vectors for each surface
 		drawingVectors = new float[2][3];
@@ -119,6 +122,7 @@ public class Wall implements SimObject{
 		
 		this.id = wall_ids;
 		wall_ids++;
+		random = sim.getRandomStream(SimRandom.WALL_STREAM, id);
 		
 		//System.out.println("wall number " + id);
 		
@@ -129,8 +133,6 @@ public class Wall implements SimObject{
 		Vector3f max = new Vector3f();
 		body.getAabb(min, max);
 		//System.out.println("Min: " + min.toString() + " max: " + max.toString()) ;
-		
-		collidedObjects = new ObjectArrayList<SimObject>();
 	}
 	
 	public CollisionShape getCollisionShape(){
@@ -162,6 +164,14 @@ public class Wall implements SimObject{
 		return receptorsBindTo;
 	}
 	
+	public BitSet getSurfaceProteinBits(){
+		return surfaceProteinBits;
+	}
+	
+	public BitSet getReceptorsBindToBits(){
+		return receptorsBindToBits;
+	}
+	
 	public TraffickingInfo getTraffickInfo(int pro, int id){
 		//Walls don't traffick. Return zero values
 		return new TraffickingInfo();
@@ -192,7 +202,7 @@ public class Wall implements SimObject{
 			}
 		}
 		if (!surfaceHasSegment){
-			SurfaceSegment seg = new SurfaceSegment(this, surface);
+			SurfaceSegment seg = new SurfaceSegment(this, surface, sim.getReceptorStore());
 			SurfaceSegment[] newSegments = new SurfaceSegment[segments.length+1];
 			//We don't already have a segment on that surface - make a new one
 			for (int i = 0; i < segments.length; i++){
@@ -206,8 +216,10 @@ public class Wall implements SimObject{
 		int[] lig = sim.getProtein(proId).getLigands();
 		for (int i = 0; i < lig.length; i++){
 			receptorsBindTo.add(new Integer(lig[i]));
+			receptorsBindToBits.set(lig[i]);
 		}
 		surfaceProteins.add(new Integer(proId));
+		surfaceProteinBits.set(proId);
 	}
 	
 	public float getSurfaceArea(int surface){
@@ -237,70 +249,82 @@ public class Wall implements SimObject{
 	}
 	
 	public Vector3f getSegmentWorldNormal(int index){
-		Transform myTrans = new Transform();
+		Vector3f myNormal = new Vector3f();
+		getSegmentWorldNormal(index, new Transform(), myNormal);
+		return myNormal;
+	}
+	
+	public void getSegmentWorldNormal(int index, Transform myTrans, Vector3f myNormal){
 		body.getMotionState().getWorldTransform(myTrans);
 		//System.out.println("My basis: " + myTrans.basis);
-		Vector3f myNormal = new Vector3f(normals[index]);
+		myNormal.set(normals[index]);
 		//System.out.println("my Wall Normal: " + myNormal);
 		myTrans.transform(myNormal);
 		myNormal.sub(myTrans.origin);
 		myNormal.normalize();
 		//System.out.println("My final normal" + myNormal);
-		return myNormal;
 	}
 	
 	public Vector3f[] getWorldCoordinates(int surface){
 		Vector3f[] vertices = new Vector3f[4];
+		for (int i = 0; i < 4; i++){
+			vertices[i] = new Vector3f();
+		}
+		getWorldCoordinates(surface, new Transform(), vertices);
+		return vertices;
+	}
+	
+	public int getWorldCoordinates(int surface, Transform myTrans, Vector3f[] vertices){
+		float x = size.x/2, y = size.y/2, z = size.z/2;
 		switch(surface){
 		case 0:
 			//FRONT
-			vertices[0] = new Vector3f(size.x/2, size.y/2, -size.z/2);
-			vertices[1] = new Vector3f(-size.x/2, size.y/2, -size.z/2);
-			vertices[2] = new Vector3f(-size.x/2, -size.y/2, -size.z/2);
-			vertices[3] = new Vector3f(size.x/2, -size.y/2, -size.z/2);
+			vertices[0].set(x, y, -z);
+			vertices[1].set(-x, y, -z);
+			vertices[2].set(-x, -y, -z);
+			vertices[3].set(x, -y, -z);
 			break;
 		case 1:
 			//BACK
-			vertices[0] = new Vector3f(size.x/2, size.y/2, size.z/2);
-			vertices[1] = new Vector3f(-size.x/2, size.y/2, size.z/2);
-			vertices[2] = new Vector3f(-size.x/2, -size.y/2, size.z/2);
-			vertices[3] = new Vector3f(size.x/2, -size.y/2, size.z/2);
+			vertices[0].set(x, y, z);
+			vertices[1].set(-x, y, z);
+			vertices[2].set(-x, -y, z);
+			vertices[3].set(x, -y, z);
 			break;
 		case 2:
 			//TOP
-			vertices[0] = new Vector3f(size.x/2, size.y/2, size.z/2);
-			vertices[1] = new Vector3f(-size.x/2, size.y/2, size.z/2);
-			vertices[2] = new Vector3f(-size.x/2, size.y/2, -size.z/2);
-			vertices[3] = new Vector3f(size.x/2, size.y/2, -size.z/2);
+			vertices[0].set(x, y, z);
+			vertices[1].set(-x, y, z);
+			vertices[2].set(-x, y, -z);
+			vertices[3].set(x, y, -z);
 			break;
 		case 3:
 			//BOTTOM
-			vertices[0] = new Vector3f(size.x/2, -size.y/2, size.z/2);
-			vertices[1] = new Vector3f(-size.x/2, -size.y/2, size.z/2);
-			vertices[2] = new Vector3f(-size.x/2, -size.y/2, -size.z/2);
-			vertices[3] = new Vector3f(size.x/2, -size.y/2, -size.z/2);
+			vertices[0].set(x, -y, z);
+			vertices[1].set(-x, -y, z);
+			vertices[2].set(-x, -y, -z);
+			vertices[3].set(x, -y, -z);
 			break;
 		case 4:
 			//LEFT
-			vertices[0] = new Vector3f(size.x/2, size.y/2, size.z/2);
-			vertices[1] = new Vector3f(size.x/2, size.y/2, -size.z/2);
-			vertices[2] = new Vector3f(size.x/2, -size.y/2, -size.z/2);
-			vertices[3] = new Vector3f(size.x/2, -size.y/2, size.z/2);
+			vertices[0].set(x, y, z);
+			vertices[1].set(x, y, -z);
+			vertices[2].set(x, -y, -z);
+			vertices[3].set(x, -y, z);
 			break;
 		default:
 			//RIGHT
-			vertices[0] = new Vector3f(-size.x/2, size.y/2, size.z/2);
-			vertices[1] = new Vector3f(-size.x/2, size.y/2, -size.z/2);
-			vertices[2] = new Vector3f(-size.x/2, -size.y/2, -size.z/2);
-			vertices[3] = new Vector3f(-size.x/2, -size.y/2, size.z/2);
+			vertices[0].set(-x, y, z);
+			vertices[1].set(-x, y, -z);
+			vertices[2].set(-x, -y, -z);
+			vertices[3].set(-x, -y, z);
 		}
-		Transform myTrans = new Transform();
 		body.getMotionState().getWorldTransform(myTrans);
 		for (int i = 0; i < 4; i++){
 			myTrans.transform(vertices[i]);
 			//System.out.println("Wall Vertices (" + surface + "): " + vertices[i].toString());
 		}
-		return vertices;
+		return 4;
 	}
 	
 	public int getVisibleProtein(){
@@ -315,20 +339,46 @@ public class Wall implements SimObject{
 	}
 	
 	public void updateObject(){
+		updateMotion();
+		updateSurface();
+	}
+	
+	public void updateMotion(){
+		//Walls don't move
+	}
+	
+	public void updateSurface(){
+		//The coatings are updated by the simulation's scheduler - see scheduleUpdates
+	}
+	
+	public void scheduleUpdates(){
+		//Called once the wall is part of the simulation
 		//TODO Find the proteins that are bound to the wall
 		//Update each one for degradation over time
 		//Only update the coatings every 5 seconds
 		//TODO The frequency of wall updates should be a user parameter
-		long deltaTime = sim.getCurrentTimeMicroseconds() - lastUpdate;
-		if (deltaTime > updateTime){
-			//update the segments
-			if (segments != null){
-				for (int i = 0; i < segments.length; i++){
-					segments[i].update(sim.getCurrentTimeMicroseconds(), deltaTime, new Vector3f());
+		sim.getScheduler().schedule(lastUpdate + updateTime + 1, new SimScheduler.Task(){
+			public long run(long now){
+				if (toRemove){
+					return -1;
 				}
+				updateCoating(now);
+				//Strictly more than updateTime between updates
+				return now + updateTime + 1;
+			}
+		});
+	}
+	
+	private void updateCoating(long now){
+		long deltaTime = now - lastUpdate;
+		//update the segments
+		if (segments != null){
+			Vector3f noPosition = new Vector3f();
+			for (int i = 0; i < segments.length; i++){
+				segments[i].update(now, deltaTime, noPosition);
 			}
-			lastUpdate = sim.getCurrentTimeMicroseconds();
 		}
+		lastUpdate = now;
 	}
 	
 	public Vector3f getColor3Vector(){
@@ -399,18 +449,6 @@ public class Wall implements SimObject{
 		//System.out.println("Collided: Wall");
 	}
 	
-	public boolean collidedWith(SimObject s){
-		if (collidedObjects.indexOf(s) == -1){
-			collidedObjects.add(s);
-			return false;
-		}
-		return true;
-	}
-	
-	public void clearCollisions(){
-		collidedObjects = new ObjectArrayList<SimObject>();
-	}
-	
 	public boolean specialRender(IGL gl, Transform t, int m){
 		return false;
 	}
@@ -419,11 +457,23 @@ public class Wall implements SimObject{
 		return this.id;
 	}
 	
+	public SimRandom getRandom(){
+		return random;
+	}
+	
 	public String getType(){
 		String s = "Wall";
 		return s;
 	}
 	
+	public int getKind(){
+		//Walls can be coated with ligands, but never carry receptors
+		if (surfaceProteins.isEmpty()){
+			return STATIC;
+		}
+		return STATIC | HAS_LIGAND_COATING;
+	}
+	
 	public float getMass(){
 		return (0.0f);
 	}
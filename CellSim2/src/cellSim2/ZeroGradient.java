@@ -22,6 +22,7 @@ package cellSim2;
 import java.io.BufferedWriter;
 import java.io.PrintStream;
 import java.io.IOException;
+import java.util.Arrays;
 
 import javax.vecmath.Vector3f;
 
@@ -53,6 +54,11 @@ public class ZeroGradient implements Gradient{
 		return concentration;
 	}
 	
+	@Override
+	public void getConcentrations(long time, float[] positions, float[] concentrations, int count){
+		Arrays.fill(concentrations, 0, count, concentration);
+	}
+	
 	@Override
 	public int getProtein(){
 		return proteinId;